@@ -0,0 +1,37 @@
+package Exceptions;
+
+/**
+ * This class represents an Exception that is thrown when the Database is saturated and a transaction is not admitted.
+ * It carries how long the client should wait before it tries again. The Exception is unchecked, as every API-call that
+ * touches the Database can be rejected, and it does not record a stack trace, as it is thrown a lot while the Database is slow.
+ */
+public class DatabaseBusyException extends RuntimeException {
+
+    /**
+     *
+     */
+    private static final long serialVersionUID = 1L;
+
+    private final int retryAfter; //the number of seconds the client should wait before trying again
+
+    /**
+     * Constructs a new {@code DatabaseBusyException}.
+     * 
+     * @param message The error message.
+     * @param retryAfter The number of seconds the client should wait before trying again.
+     */
+    public DatabaseBusyException(String message, int retryAfter) {
+        super(message, null, false, false);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * This method returns how long the client should wait before trying again.
+     * 
+     * @return The number of seconds.
+     */
+    public int getRetryAfter() {
+        return retryAfter;
+    }
+
+}
@@ -0,0 +1,22 @@
+package Exceptions;
+
+/**
+ * This class represents an Exception that occurs when a lookup on the Database fails.
+ */
+public class DatabaseReadException extends Exception {
+
+    /**
+     *
+     */
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * Constructs a new {@code DatabaseReadException}.
+     * 
+     * @param message The error message.
+     */
+    public DatabaseReadException(String message) {
+        super(message);
+    }
+
+}
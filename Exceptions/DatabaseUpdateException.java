@@ -0,0 +1,22 @@
+package Exceptions;
+
+/**
+ * This class represents an Exception that occurs when an update on the Database fails.
+ */
+public class DatabaseUpdateException extends Exception {
+
+    /**
+     *
+     */
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * Constructs a new {@code DatabaseUpdateException}.
+     * 
+     * @param message The error message.
+     */
+    public DatabaseUpdateException(String message) {
+        super(message);
+    }
+
+}
@@ -2,6 +2,8 @@ package Exceptions;
 
 /**
  * This class is the super class for all Exceptions related to {@code GameRoom} errors.
+ * A full room or an unknown room is an expected answer to an API-call, not a bug, and only the message is sent to the client.
+ * Therefore no stack trace is recorded, which makes a rejected join as cheap as an accepted one.
  */
 public class GameRoomException extends Exception {
 
@@ -11,11 +13,11 @@ public class GameRoomException extends Exception {
     private static final long serialVersionUID = 1L;
     
     /**
-     * Constructs a new {@code GameRoomException}.
+     * Constructs a new {@code GameRoomException} without a stack trace.
      * 
      * @param message The error message.
      */
     public GameRoomException(String message ){
-        super(message);
+        super(message, null, false, false);
     }
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package Exceptions;
 
 /**
  * This class is the super class for all Exceptions related to {@code GameState} errors.
+ * Clients that poll or act in the wrong {@code State} cause these Exceptions all the time, so they are created without a stack trace.
  */
 public class GameStateException extends Exception {
 
@@ -11,11 +12,11 @@ public class GameStateException extends Exception {
     private static final long serialVersionUID = 1L;
     
     /**
-     * Constructs a new {@code GameStateException}.
+     * Constructs a new {@code GameStateException} without a stack trace.
      * @param message  The Error message.
      */
     public GameStateException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,16 @@
+package Exceptions;
+
+/**
+ * This Exception is thrown when the body of a binary in-game API-call is not a valid length-prefixed payload.
+ */
+public class MalformedPayloadException extends GameStateException {
+
+    /**
+     *
+     */
+    private static final long serialVersionUID = 1L;
+    
+    public MalformedPayloadException(String message) {
+        super(message);
+    }
+}
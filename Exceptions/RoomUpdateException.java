@@ -0,0 +1,21 @@
+package Exceptions;
+
+/**
+ * This class represents an Exception that is thrown when a player could not be added to a room because the room could not be written.
+ * The client can simply try to join again.
+ */
+public class RoomUpdateException extends GameRoomException {
+    /**
+     *
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Construct a new {@code RoomUpdateException}.
+     * @param message The Error message.
+     */
+    public RoomUpdateException(String message) {
+        super(message);
+    }
+
+}
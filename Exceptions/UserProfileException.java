@@ -2,6 +2,7 @@ package Exceptions;
 
 /**
  * This class is the super class for all Exceptions that deal with {@code UserProfile} related errors.
+ * These Exceptions report unknown, duplicate or unverified users back to the client and do not record a stack trace.
  */
 public class UserProfileException extends Exception {
 
@@ -11,12 +12,12 @@ public class UserProfileException extends Exception {
     private static final long serialVersionUID = 1L;
     
     /**
-     * Constructs a new {@code UserProfileException}.
+     * Constructs a new {@code UserProfileException} without a stack trace.
      * 
      * @param message The error message.
      */
     public UserProfileException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,163 @@
+package benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * This class records a rough baseline of the in-memory benchmarks where the JMH runner is not at hand.
+ * It runs every {@code @Benchmark} method of the given classes for every combination of {@code @Param} values in a plain timed loop on one thread:
+ * a warmup, then a number of measurement rounds, of which the fastest is reported. Next to the time per operation,
+ * it reports the bytes the thread allocated per operation, like JMH's {@code -prof gc}.
+ *
+ * Parameter combinations with the CBOR encoding are skipped unless the real jackson-dataformat-cbor is on the classpath.
+ *
+ * The numbers are not as reliable as JMH's, as there is no fork per benchmark and no protection against dead code elimination
+ * besides keeping the results alive. The JMH runner stays the reference: {@code java -jar benchmarks.jar -rf json -rff baseline.json -prof gc}.
+ *
+ * Usage: {@code BaselineRunner [millis per round] [classes...]}, by default 1000 and every in-memory benchmark.
+ */
+public class BaselineRunner {
+
+    private static final int warmups = 3; //rounds that are not measured
+    private static final int rounds = 5; //rounds that are measured
+
+    private static final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static Object sink; //keeps the result of the last operation alive
+    private static final boolean cbor = "CBOR".equals(new com.fasterxml.jackson.dataformat.cbor.CBORFactory().getFormatName()); //whether the real CBOR encoder is on the classpath
+
+    public static void main(String[] args) throws Exception {
+        long millis = (args.length > 0) ? Long.parseLong(args[0]) : 1000;
+        List<String> classes = (args.length > 1) ? Arrays.asList(args).subList(1, args.length) : Arrays.asList(
+            "ModelCodecBenchmark", "JsonFactoryBenchmark", "GameStateRoundBenchmark", "LoggerBenchmark", "RejectionPathBenchmark");
+
+        System.out.println(String.format("%-58s %14s %14s", "benchmark", "ns/op", "bytes/op"));
+
+        for(String name : classes)
+            run(Class.forName(name.contains(".") ? name : "benchmarks." + name), millis);
+        //
+
+        System.exit(0);
+    }
+
+    /* PRIVATE FUNCTIONS */
+
+    /**
+     * This method runs all benchmarks of a class for every combination of its parameters.
+     *
+     * @param type The benchmark class.
+     * @param millis The duration of every round.
+     */
+    private static void run(Class<?> type, long millis) throws Exception {
+        List<Field> params = new ArrayList<>();
+        for(Field f : type.getFields())
+            if(f.isAnnotationPresent(Param.class))
+                params.add(f);
+            //
+        //
+
+        for(String[] combination : combinations(params, 0)) {
+            //a stand-in CBOR encoder writes JSON, which would only be a second JSON row under the name of CBOR
+            if(!cbor && Arrays.asList(combination).contains("CBOR")) {
+                System.out.println(type.getSimpleName() + " " + Arrays.toString(combination) + " skipped, the CBOR encoder on the classpath is not jackson-dataformat-cbor");
+                continue;
+            }
+
+            for(Method m : type.getMethods())
+                if(m.isAnnotationPresent(Benchmark.class))
+                    System.out.println(measure(type, params, combination, m, millis));
+                //
+            //
+        }
+    }
+
+    /**
+     * This method measures one benchmark method with one combination of parameters on a fresh instance.
+     *
+     * @return One line of the report.
+     */
+    private static String measure(Class<?> type, List<Field> params, String[] combination, Method benchmark, long millis) throws Exception {
+        Object state = type.getConstructor().newInstance();
+
+        for(int i = 0; i < params.size(); i++)
+            params.get(i).set(state, convert(params.get(i).getType(), combination[i]));
+        //
+
+        invokeAll(state, Setup.class);
+
+        double bestNanos = Double.MAX_VALUE, bestBytes = 0;
+        for(int round = 0; round < warmups + rounds; round++) {
+            long ops = 0;
+            long bytes = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            long start = System.nanoTime(), end = start + millis * 1_000_000L, now;
+
+            do {
+                for(int i = 0; i < 100; i++)
+                    sink = benchmark.invoke(state);
+                //
+                ops += 100;
+            } while((now = System.nanoTime()) < end);
+
+            bytes = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - bytes;
+
+            if(round >= warmups && (now - start) / (double) ops < bestNanos) {
+                bestNanos = (now - start) / (double) ops;
+                bestBytes = bytes / (double) ops;
+            }
+        }
+
+        invokeAll(state, TearDown.class);
+
+        String name = type.getSimpleName() + "." + benchmark.getName() + (combination.length > 0 ? " " + Arrays.toString(combination) : "");
+        return String.format("%-58s %14.1f %14.1f", name, bestNanos, bestBytes);
+    }
+
+    private static void invokeAll(Object state, Class<? extends java.lang.annotation.Annotation> annotation) throws IllegalAccessException, InvocationTargetException {
+        for(Method m : state.getClass().getMethods())
+            if(m.isAnnotationPresent(annotation))
+                m.invoke(state);
+            //
+        //
+    }
+
+    /**
+     * This method lists every combination of the values of the parameters, starting with the specified parameter.
+     */
+    private static List<String[]> combinations(List<Field> params, int index) {
+        List<String[]> result = new ArrayList<>();
+
+        if(index == params.size()) {
+            result.add(new String[params.size()]);
+            return result;
+        }
+
+        for(String value : params.get(index).getAnnotation(Param.class).value())
+            for(String[] rest : combinations(params, index + 1)) {
+                rest[index] = value;
+                result.add(rest);
+            }
+        //
+
+        return result;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object convert(Class<?> type, String value) {
+        if(type.isEnum()) return Enum.valueOf((Class<? extends Enum>) type, value);
+        if(type == int.class) return Integer.parseInt(value);
+        if(type == long.class) return Long.parseLong(value);
+        if(type == boolean.class) return Boolean.parseBoolean(value);
+
+        return value;
+    }
+
+}
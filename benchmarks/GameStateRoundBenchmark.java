@@ -0,0 +1,71 @@
+package benchmarks;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Exceptions.GameStateException;
+import models.GameState;
+
+/**
+ * This benchmark plays full minigame rounds on a single {@code GameState} of four players, the way the clients drive it:
+ * the Gamemaster sets the minigame, every player gets it, every player syncs their result, the results are read,
+ * every player posts ready and the Gamemaster starts the next round. Every round ends in GM_CHOOSING, where the next one starts.
+ * The game is started with the room owner as the fixed Gamemaster, so the round does not depend on chance.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameStateRoundBenchmark {
+
+    private final List<String> players = Arrays.asList("firebase-0", "firebase-1", "firebase-2", "firebase-3"); //firebase-0 owns the room
+    private final byte[] initialValues = new byte[64]; //the initial values the Gamemaster posts with the minigame
+    private GameState game; //the game the rounds are played on
+
+    @Setup
+    public void setup() throws GameStateException {
+        game = GameState.CreateGame(0);
+        game.occupy();
+        game.start(players.get(0), players, players.size(), true);
+    }
+
+    @Benchmark
+    public int round() throws GameStateException {
+        String gm = players.get(game.getGMIndex());
+
+        game.setMinigame(gm, 1, 0, initialValues);
+
+        for(String p : players)
+            game.getMinigame(p);
+        //
+
+        for(String p : players)
+            game.sync(p, "10");
+        //
+
+        int results = game.getResults().size(); //the list is cleared by the next round
+
+        for(String p : players)
+            game.postReady(p);
+        //
+
+        game.nextRound(gm);
+
+        return results;
+    }
+
+}
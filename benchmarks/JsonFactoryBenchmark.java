@@ -0,0 +1,129 @@
+package benchmarks;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import models.JsonFactory;
+import models.JsonFactory.Encoding;
+import models.UserProfile;
+import play.mvc.Result;
+
+/**
+ * This benchmark measures the responses built by the {@code JsonFactory}, once for every {@code Encoding}.
+ * {@code toJson(UserProfile)} looks up the names of friends and rivals in the Database, so it is measured here for a user without any;
+ * {@code profileDecoded} and {@code profileDirect} compare the double conversion of such a user with the direct path.
+ * {@code ProfileReadBenchmark} compares both paths with their Database round trips.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonFactoryBenchmark {
+
+    @Param({"JSON", "CBOR"})
+    public Encoding encoding; //the encoding of the responses
+
+    private List<String> values; //the values of a typical list response, like the player states of a room
+    private Document user; //the stored Document of a user
+    private Map<String,String> names; //the usernames of the friends and rivals of the user
+    private Document loner; //the stored Document of a user without friends and rivals, whose profile needs no Database
+    private UserProfile lonerProfile; //the decoded loner
+
+    @Setup
+    public void setup() {
+        JsonFactory.setEncoding(encoding);
+
+        values = Arrays.asList("PLAYING", "WAITING", "WAITING", "READY");
+
+        user = new Document("_id", "firebase-0")
+            .append("username", "player0")
+            .append("tickets", "120")
+            .append("friends", Arrays.asList("firebase-1", "firebase-2", "firebase-3"))
+            .append("rivals", Arrays.asList("firebase-1", "firebase-2"))
+            .append("streaks", Arrays.asList(3, -1));
+
+        names = new HashMap<>();
+        for(int i = 1; i <= 3; i++)
+            names.put("firebase-" + i, "player" + i);
+        //
+
+        loner = new Document("_id", "firebase-9")
+            .append("username", "player9")
+            .append("tickets", "120")
+            .append("friends", Collections.emptyList())
+            .append("rivals", Collections.emptyList())
+            .append("streaks", Collections.emptyList());
+        lonerProfile = UserProfile.construct(loner);
+    }
+
+    @TearDown
+    public void tearDown() {
+        JsonFactory.setEncoding(null);
+    }
+
+    @Benchmark
+    public Result operationOk() {
+        return JsonFactory.toJson();
+    }
+
+    @Benchmark
+    public Result singleValue() {
+        return JsonFactory.toJson((Object) 3);
+    }
+
+    @Benchmark
+    public Result valueList() {
+        return JsonFactory.toJson(values);
+    }
+
+    @Benchmark
+    public Result userProfile() {
+        return JsonFactory.toJson(user, names);
+    }
+
+    @Benchmark
+    public Result profileObject() {
+        return JsonFactory.toJson(lonerProfile);
+    }
+
+    @Benchmark
+    public Result profileDecoded() {
+        return JsonFactory.toJson(UserProfile.construct(loner));
+    }
+
+    @Benchmark
+    public Result profileDirect() {
+        return JsonFactory.toJson(loner, Collections.<String,String>emptyMap());
+    }
+
+    @Benchmark
+    public byte[] userBody() {
+        return JsonFactory.userBody(user, names);
+    }
+
+    @Benchmark
+    public Result error() {
+        return JsonFactory.toJson(new IllegalStateException("benchmark"));
+    }
+
+}
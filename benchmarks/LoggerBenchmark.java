@@ -0,0 +1,57 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import models.Logger;
+import models.Logger.Tags;
+
+/**
+ * This benchmark measures what a logging call costs while its tag is disabled, which is the case for most calls in production.
+ * Such a call should cost no more than reading the enabled tags: no message is built and nothing is allocated.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoggerBenchmark {
+
+    private String url = "/room/join"; //the base url of a logged API-call
+    private String firebaseID = "firebase-0"; //an url-parameter
+    private int roomID = 42; //an url-parameter that is boxed by the call
+
+    @Setup
+    public void setup() {
+        for(Tags tag : Tags.values())
+            Logger.setEnabled(tag, false);
+        //
+    }
+
+    @Benchmark
+    public void message() {
+        Logger.Log(Tags.INF, "Creating a GameState instance");
+    }
+
+    @Benchmark
+    public void url() {
+        Logger.Log(Tags.CLL, url, firebaseID, roomID);
+    }
+
+    @Benchmark
+    public void template() {
+        Logger.Logf(Tags.ERR, "Room {} could not be updated for {}", roomID, firebaseID);
+    }
+
+}
@@ -0,0 +1,80 @@
+package benchmarks;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import models.GameRoom;
+import models.UserProfile;
+
+/**
+ * This benchmark measures how long it takes to turn the stored {@code Document} of a {@code UserProfile} or {@code GameRoom}
+ * into the object and back. Both happen on almost every API-call, so they set the floor of every request.
+ * The Documents are built in memory; no Database is needed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelCodecBenchmark {
+
+    private Document userDoc; //a user with a few friends and rivals
+    private Document roomDoc; //a full room
+    private UserProfile user; //the decoded user
+    private GameRoom room; //the decoded room
+
+    @Setup
+    public void setup() {
+        userDoc = new Document("_id", "firebase-0")
+            .append("username", "player0")
+            .append("tickets", "120")
+            .append("friends", Arrays.asList("firebase-1", "firebase-2", "firebase-3", "firebase-4", "firebase-5"))
+            .append("rivals", Arrays.asList("firebase-1", "firebase-2", "firebase-3"))
+            .append("streaks", Arrays.asList(3, -1, 0));
+
+        roomDoc = new Document("_id", "42")
+            .append("maxPlayers", "4")
+            .append("numPlayers", "4")
+            .append("players", Arrays.asList("firebase-0", "firebase-1", "firebase-2", "firebase-3"))
+            .append("update", Arrays.asList("true", "false", "false", "true"))
+            .append("occupied", "true")
+            .append("cheated", "false");
+
+        user = UserProfile.construct(userDoc);
+        room = GameRoom.construct(roomDoc);
+    }
+
+    @Benchmark
+    public UserProfile decodeUserProfile() {
+        return UserProfile.construct(userDoc);
+    }
+
+    @Benchmark
+    public Document encodeUserProfile() {
+        return user.encode();
+    }
+
+    @Benchmark
+    public GameRoom decodeGameRoom() {
+        return GameRoom.construct(roomDoc);
+    }
+
+    @Benchmark
+    public Document encodeGameRoom() {
+        return room.encode();
+    }
+
+}
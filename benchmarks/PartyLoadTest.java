@@ -0,0 +1,294 @@
+package benchmarks;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import akka.actor.ActorSystem;
+import controllers.HomeController;
+import db.DatabaseExecutionContext;
+import models.LatencyHistogram;
+import play.http.HttpEntity;
+import play.mvc.Http;
+import play.mvc.Result;
+
+/**
+ * This class is a load generator that plays complete parties through the API-calls of the {@code HomeController}, in the same process.
+ * Every party registers its players, reserves a room, lets the other players join, starts the game and plays a number of rounds:
+ * the Gamemaster sets the minigame, every player gets it, posts and reads player data for a number of ticks, posts a result,
+ * reads the results and posts ready, and the Gamemaster starts the next round. At the end every player leaves the room.
+ * The players of a party are played in lockstep by one thread; {@code concurrency} parties run at the same time.
+ *
+ * The Database calls go to a local stand-in instead of the server's MongoDB instance: by default 127.0.0.1:28100 with the database {@code loadtest},
+ * set with {@code -Ddb.uri} and {@code -Ddb.name}. A throwaway instance is enough, for example {@code mongod --port 28100 --dbpath /tmp/load-db}.
+ * Every run registers new users, so runs do not interfere with each other.
+ * As there are at most 99 rooms, a concurrency above 99 only measures failing reservations.
+ *
+ * Usage: {@code PartyLoadTest [parties] [concurrency] [players] [rounds] [ticks]}, by default {@code 1000 64 4 3 10}.
+ * The report contains the throughput, the latency percentiles of every API-call and how often every API-call was made per party.
+ */
+public class PartyLoadTest {
+
+    private static final ObjectMapper mapper = new ObjectMapper(); //parses the JSON responses
+    private static final Http.Request request = new Http.RequestBuilder().build(); //the request passed to API-calls that need one, asks for JSON
+
+    private final HomeController controller; //the controller the API-calls are made on
+    private final String runID; //keeps the Firebase IDs of different runs apart
+    private final int players; //the number of players per party
+    private final int rounds; //the number of rounds per party
+    private final int ticks; //the number of player data exchanges per round
+
+    private final ConcurrentHashMap<String,LatencyHistogram> routes = new ConcurrentHashMap<>(); //the latencies of every API-call by name
+    private final ConcurrentHashMap<String,LongAdder> failures = new ConcurrentHashMap<>(); //the failed calls of every API-call by name
+    private final LatencyHistogram parties = new LatencyHistogram(); //the duration of every finished party
+    private final LongAdder failedParties = new LongAdder(); //the number of parties that did not finish
+    private final AtomicInteger nextParty = new AtomicInteger(); //the number of the next party that is started
+
+    /**
+     * Creates the load generator.
+     *
+     * @param controller The controller the API-calls are made on.
+     * @param players The number of players per party.
+     * @param rounds The number of rounds per party.
+     * @param ticks The number of player data exchanges per round.
+     */
+    public PartyLoadTest(HomeController controller, int players, int rounds, int ticks) {
+        this.controller = controller;
+        this.runID = Long.toString(System.currentTimeMillis(), 36);
+        this.players = players;
+        this.rounds = rounds;
+        this.ticks = ticks;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        //never write to the server's Database by default, but to a throwaway instance and database
+        System.setProperty("db.uri", System.getProperty("db.uri", "mongodb://127.0.0.1:28100/?connectTimeoutMS=5000"));
+        System.setProperty("db.name", System.getProperty("db.name", "loadtest"));
+
+        int parties = argument(args, 0, 1000);
+        int concurrency = argument(args, 1, 64);
+        int players = argument(args, 2, 4);
+        int rounds = argument(args, 3, 3);
+        int ticks = argument(args, 4, 10);
+
+        Config config = ConfigFactory.parseString(
+            "database.dispatcher { executor = \"thread-pool-executor\", throughput = 1, thread-pool-executor.fixed-pool-size = " + concurrency + " }"
+        ).withFallback(ConfigFactory.load());
+        ActorSystem system = ActorSystem.create("load", config);
+
+        PartyLoadTest test = new PartyLoadTest(new HomeController(new DatabaseExecutionContext(system, config)), players, rounds, ticks);
+        System.out.println(test.run(parties, concurrency));
+
+        system.terminate();
+        System.exit(test.failedParties.sum() == 0 ? 0 : 1);
+    }
+
+    /**
+     * This method plays the parties and waits until all of them are finished.
+     *
+     * @param parties The number of parties that are played.
+     * @param concurrency The number of parties that are played at the same time.
+     * @return The report of the run.
+     * @throws InterruptedException If the run is interrupted.
+     */
+    public String run(int parties, int concurrency) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+
+        for(int i = 0; i < concurrency; i++)
+            pool.execute(() -> {
+                int party;
+                while((party = nextParty.getAndIncrement()) < parties)
+                    party(party);
+                //
+            });
+        //
+
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+
+        return report(System.nanoTime() - start);
+    }
+
+    /* PRIVATE FUNCTIONS */
+
+    /**
+     * This method plays a single party from the registration of its players until every player left the room.
+     *
+     * @param party The number of the party.
+     */
+    private void party(int party) {
+        long start = System.nanoTime();
+        String[] ids = new String[players];
+        int roomID = -1;
+        boolean played = false;
+
+        try {
+            for(int i = 0; i < players; i++) {
+                String id = ids[i] = runID + "-" + party + "-" + i;
+                call("Register", () -> controller.Register(id, "load-" + id).toCompletableFuture().join());
+            }
+
+            int room = roomID = call("ReserveRoom", () -> controller.ReserveRoom(ids[0], players).toCompletableFuture().join()).get("VALUE").asInt();
+
+            for(int i = 1; i < players; i++) {
+                String id = ids[i];
+                call("JoinRoom", () -> controller.JoinRoom(id, room).toCompletableFuture().join());
+            }
+
+            call("StartGame", () -> controller.StartGame(ids[0], room).toCompletableFuture().join());
+
+            for(int r = 0; r < rounds; r++)
+                round(ids, room);
+            //
+
+            played = true;
+        } catch (RuntimeException e) {
+            failedParties.increment();
+        } finally {
+            if(roomID >= 0) leave(ids, roomID);
+            if(played) parties.recordSince(start);
+        }
+    }
+
+    /**
+     * This method plays a single minigame round.
+     *
+     * @param ids The Firebase IDs of the players.
+     * @param room The ID of the room.
+     */
+    private void round(String[] ids, int room) {
+        String gm = ids[call("GetGMIndex", () -> controller.GetGMIndex(request, room)).get("VALUE").asInt()];
+
+        call("SetMinigame", () -> controller.SetMinigame(gm, room, 1, 0, "init"));
+
+        for(String id : ids)
+            call("GetMinigame", () -> controller.GetMinigame(request, id, room));
+        //
+
+        for(int t = 0; t < ticks; t++)
+            for(int i = 0; i < ids.length; i++) {
+                String id = ids[i], data = "tick" + t;
+                int other = (i + 1) % ids.length;
+
+                call("PostPlayerData", () -> controller.PostPlayerData(id, room, data));
+                call("GetPlayerData", () -> controller.GetPlayerData(room, other));
+            }
+        //
+
+        for(int i = 0; i < ids.length; i++) {
+            String id = ids[i], result = String.valueOf(i);
+            call("PostResult", () -> controller.PostResult(id, room, result));
+        }
+
+        call("GetResults", () -> controller.GetResults(request, room));
+
+        for(String id : ids)
+            call("PostReady", () -> controller.PostReady(id, room));
+        //
+
+        call("NextRound", () -> controller.NextRound(gm, room));
+    }
+
+    /**
+     * This method lets every player that is still in the room leave it, the room owner last.
+     * Failures are counted, but do not stop the other players from leaving.
+     *
+     * @param ids The Firebase IDs of the players.
+     * @param room The ID of the room.
+     */
+    private void leave(String[] ids, int room) {
+        for(int i = ids.length - 1; i >= 0; i--) {
+            String id = ids[i];
+            if(id == null) continue;
+
+            try {
+                call("LeaveRoom", () -> controller.LeaveRoom(id, room).toCompletableFuture().join());
+            } catch (RuntimeException e) {
+                //already counted
+            }
+        }
+    }
+
+    /**
+     * This method makes an API-call and records its latency under the specified name.
+     *
+     * @param route The name of the API-call.
+     * @param call Makes the API-call and waits for its Result.
+     * @return The parsed JSON response.
+     * @throws IllegalStateException If the API-call failed, that is, if its STATUS is not 0 or the response is no JSON.
+     */
+    private JsonNode call(String route, Supplier<Result> call) {
+        long start = System.nanoTime();
+        JsonNode response = null;
+
+        try {
+            Result result = call.get();
+            byte[] body = ((HttpEntity.Strict) result.body()).data().toArray();
+
+            response = (body.length == 0) ? null : mapper.readTree(body);
+        } catch (Exception e) {
+            //counted as a failed call below
+        }
+
+        routes.computeIfAbsent(route, r -> new LatencyHistogram()).recordSince(start);
+
+        if(response == null || response.path("STATUS").asInt(-1) != 0) {
+            failures.computeIfAbsent(route, r -> new LongAdder()).increment();
+
+            throw new IllegalStateException(route + " failed: " + response);
+        }
+
+        return response;
+    }
+
+    /**
+     * This method puts the report of a run together.
+     *
+     * @param nanos The duration of the run in nanoseconds.
+     * @return The report.
+     */
+    private String report(long nanos) {
+        StringBuilder out = new StringBuilder(2048);
+        double seconds = nanos / 1e9;
+        long finished = parties.count();
+        long calls = 0;
+
+        for(LatencyHistogram h : routes.values())
+            calls += h.count();
+        //
+
+        out.append(String.format("%d parties finished, %d failed in %.1fs%n", finished, failedParties.sum(), seconds));
+        out.append(String.format("%.1f parties/s, %.0f calls/s%n", finished / seconds, calls / seconds));
+        out.append(String.format("party duration  p50 %.1fms  p99 %.1fms%n%n", parties.percentile(0.5) / 1e3, parties.percentile(0.99) / 1e3));
+
+        out.append(String.format("%-16s %10s %10s %8s %9s %9s %9s %9s%n", "route", "calls", "per party", "failed", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms"));
+
+        for(Map.Entry<String,LatencyHistogram> route : new TreeMap<>(routes).entrySet()) {
+            LatencyHistogram h = route.getValue();
+            LongAdder failed = failures.get(route.getKey());
+
+            out.append(String.format("%-16s %10d %10.1f %8d %9.3f %9.3f %9.3f %9.3f%n",
+                route.getKey(), h.count(), (finished == 0) ? 0.0 : (double) h.count() / finished, (failed == null) ? 0 : failed.sum(),
+                h.percentile(0.5) / 1e3, h.percentile(0.9) / 1e3, h.percentile(0.99) / 1e3, h.percentile(0.999) / 1e3));
+        }
+
+        return out.toString();
+    }
+
+    private static int argument(String[] args, int index, int fallback) {
+        return (args.length > index) ? Integer.parseInt(args[index]) : fallback;
+    }
+
+}
@@ -0,0 +1,181 @@
+package benchmarks;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import akka.actor.ActorSystem;
+import controllers.HomeController;
+import db.DatabaseExecutionContext;
+import models.GameStateCache;
+import models.LatencyHistogram;
+import play.libs.concurrent.HttpExecution;
+import play.mvc.Http;
+import play.mvc.Result;
+import play.mvc.Results;
+
+/**
+ * This class shows that the latency of game polls does not depend on the latency of the Database.
+ * It models Play's default dispatcher as a fixed pool of request threads. Pollers call {@code AskState} on the {@code HomeController}
+ * through that pool at a fixed rate, while a number of clients keep making Database-bound API-calls through the same pool.
+ *
+ * A Database-bound API-call is a stand-in that blocks for a configured time, like a Mongo call against a slow Database,
+ * so no MongoDB instance is needed. It runs in two modes:
+ * <ul>
+ *   <li>shared: the stand-in blocks the request thread, like every API-call did before they returned a {@code CompletionStage}.</li>
+ *   <li>isolated: the request thread hands the stand-in to the {@code DatabaseExecutionContext}, like the Database-bound API-calls of the controller do.</li>
+ * </ul>
+ * The report contains the poll latency percentiles and the Database-bound calls per second of every mode, once for each Database latency.
+ *
+ * Usage: {@code PollIsolationLoadTest [dbMillis] [dbClients] [pollers] [requestThreads] [dbThreads] [seconds]},
+ * where dbMillis is a comma-separated list, by default {@code 0,50,500 64 8 16 32 5}.
+ */
+public class PollIsolationLoadTest {
+
+    private static final Http.Request request = new Http.RequestBuilder().build(); //the request passed to AskState, asks for JSON
+    private static final int roomID = 1; //the room that is polled
+
+    private final HomeController controller; //the controller AskState is called on
+    private final DatabaseExecutionContext dbContext; //the executor of the Database-bound API-calls
+    private final int dbClients; //the number of clients that keep making Database-bound API-calls
+    private final int pollers; //the number of clients that poll the game
+    private final int requestThreads; //the size of the request pool, which stands in for Play's default dispatcher
+    private final int seconds; //the duration of every measurement
+
+    /**
+     * Creates the load test.
+     *
+     * @param dbContext The executor of the Database-bound API-calls.
+     * @param dbClients The number of clients that keep making Database-bound API-calls.
+     * @param pollers The number of clients that poll the game.
+     * @param requestThreads The size of the request pool.
+     * @param seconds The duration of every measurement in seconds.
+     */
+    public PollIsolationLoadTest(DatabaseExecutionContext dbContext, int dbClients, int pollers, int requestThreads, int seconds) {
+        this.controller = new HomeController(dbContext);
+        this.dbContext = dbContext;
+        this.dbClients = dbClients;
+        this.pollers = pollers;
+        this.requestThreads = requestThreads;
+        this.seconds = seconds;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String[] latencies = ((args.length > 0) ? args[0] : "0,50,500").split(",");
+        int dbClients = argument(args, 1, 64);
+        int pollers = argument(args, 2, 8);
+        int requestThreads = argument(args, 3, 16);
+        int dbThreads = argument(args, 4, 32);
+        int seconds = argument(args, 5, 5);
+
+        Config config = ConfigFactory.parseString(
+            "database.dispatcher { executor = \"thread-pool-executor\", throughput = 1, thread-pool-executor.fixed-pool-size = " + dbThreads + " }"
+        ).withFallback(ConfigFactory.load());
+        ActorSystem system = ActorSystem.create("isolation", config);
+
+        GameStateCache.occupyRoom(roomID);
+
+        PollIsolationLoadTest test = new PollIsolationLoadTest(new DatabaseExecutionContext(system, config), dbClients, pollers, requestThreads, seconds);
+
+        System.out.println(dbClients + " Database clients, " + pollers + " pollers every 10ms, " + requestThreads + " request threads, " + dbThreads + " Database threads, " + seconds + "s per measurement");
+        System.out.println(String.format("%9s %9s %11s %11s %11s %10s", "db ms", "mode", "poll p50ms", "p99 ms", "max ms", "db calls/s"));
+
+        //a short run first, so the controller and the pools are warmed up
+        test.measure(0, true, 1);
+
+        for(String latency : latencies)
+            for(boolean isolated : new boolean[] { false, true })
+                System.out.println(test.measure(Long.parseLong(latency.trim()), isolated, seconds));
+            //
+        //
+
+        system.terminate();
+        System.exit(0);
+    }
+
+    /**
+     * This method runs one measurement.
+     *
+     * @param dbMillis The time every Database-bound API-call blocks.
+     * @param isolated Whether the Database-bound API-calls run on the {@code DatabaseExecutionContext} instead of the request thread.
+     * @param duration The duration of the measurement in seconds.
+     * @return One line of the report.
+     */
+    public String measure(long dbMillis, boolean isolated, int duration) throws InterruptedException {
+        ExecutorService requests = Executors.newFixedThreadPool(requestThreads);
+        ExecutorService clients = Executors.newCachedThreadPool();
+        LatencyHistogram polls = new LatencyHistogram();
+        LongAdder dbCalls = new LongAdder();
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(duration);
+
+        for(int i = 0; i < dbClients; i++)
+            clients.execute(() -> {
+                while(System.nanoTime() < end) {
+                    //the request thread only returns once the action returned its CompletionStage
+                    CompletableFuture<CompletionStage<Result>> action = CompletableFuture.supplyAsync(() -> databaseCall(dbMillis, isolated), requests);
+                    action.thenCompose(stage -> stage).join();
+                    dbCalls.increment();
+                }
+            });
+        //
+
+        for(int i = 0; i < pollers; i++)
+            clients.execute(() -> {
+                while(System.nanoTime() < end) {
+                    long start = System.nanoTime();
+                    CompletableFuture.supplyAsync(() -> controller.AskState(request, roomID), requests).join();
+                    polls.recordSince(start);
+
+                    sleep(10);
+                }
+            });
+        //
+
+        clients.shutdown();
+        clients.awaitTermination(duration + 60, TimeUnit.SECONDS);
+        requests.shutdownNow();
+
+        return String.format("%9d %9s %11.3f %11.3f %11.3f %10.0f", dbMillis, isolated ? "isolated" : "shared",
+            polls.percentile(0.5) / 1e3, polls.percentile(0.99) / 1e3, polls.percentile(1.0) / 1e3, dbCalls.sum() / (double) duration);
+    }
+
+    /* PRIVATE FUNCTIONS */
+
+    /**
+     * This method is the stand-in for a Database-bound API-call. It is run on a request thread.
+     *
+     * @param dbMillis The time the call blocks.
+     * @param isolated Whether the call blocks on the {@code DatabaseExecutionContext} instead of the request thread.
+     * @return The stage of the result.
+     */
+    private CompletionStage<Result> databaseCall(long dbMillis, boolean isolated) {
+        if(isolated)
+            return CompletableFuture.supplyAsync(() -> {
+                sleep(dbMillis);
+                return Results.ok("ok");
+            }, HttpExecution.fromThread(dbContext));
+        //
+
+        sleep(dbMillis);
+        return CompletableFuture.completedFuture(Results.ok("ok"));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static int argument(String[] args, int index, int fallback) {
+        return (args.length > index) ? Integer.parseInt(args[index]) : fallback;
+    }
+
+}
@@ -0,0 +1,74 @@
+package benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Exceptions.DatabaseInsertException;
+import Exceptions.UserProfileException;
+import models.JsonFactory;
+import models.UserProfile;
+import play.mvc.Result;
+
+/**
+ * This benchmark compares the two ways a profile read is answered, including their Database round trips:
+ * <ul>
+ *   <li>{@code doubleConversion}: the stored {@code Document} is decoded into a {@code UserProfile}, which looks up the name of every friend and rival
+ *       on its own, and is then transformed into the response by {@code toJson(UserProfile)}.</li>
+ *   <li>{@code direct}: the stored {@code Document} is transcoded straight into the response, with all names looked up in one query,
+ *       like {@code GetUserInfo} and {@code SearchFriend} do.</li>
+ * </ul>
+ * It needs a throwaway MongoDB instance, by default on 127.0.0.1:28100 with the database {@code loadtest}, for example
+ * {@code mongod --port 28100 --dbpath /tmp/bench-db}. The setup registers a user with five friends and three rivals there.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Ddb.uri=mongodb://127.0.0.1:28100/?connectTimeoutMS=5000", "-Ddb.name=loadtest"})
+public class ProfileReadBenchmark {
+
+    private String firebaseID; //the user whose profile is read
+
+    @Setup
+    public void setup() throws UserProfileException, DatabaseInsertException {
+        String runID = Long.toString(System.currentTimeMillis(), 36);
+        firebaseID = "bench-" + runID + "-0";
+
+        UserProfile user = new UserProfile(firebaseID, "bench-" + runID + "-user0");
+
+        for(int i = 1; i <= 5; i++) {
+            String name = "bench-" + runID + "-user" + i;
+            new UserProfile("bench-" + runID + "-" + i, name);
+
+            user.addFriend(name);
+            if(i <= 3) user.addStreak(name, i - 2);
+        }
+    }
+
+    @Benchmark
+    public Result doubleConversion() throws UserProfileException {
+        return JsonFactory.toJson(UserProfile.findUser(firebaseID));
+    }
+
+    @Benchmark
+    public Result direct() throws UserProfileException {
+        Document user = UserProfile.findOwnUserDocument(firebaseID);
+        Map<String,String> names = UserProfile.findRelatedNames(user);
+
+        return JsonFactory.toJson(user, names);
+    }
+
+}
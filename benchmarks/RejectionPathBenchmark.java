@@ -0,0 +1,92 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Exceptions.GameStateException;
+import Exceptions.RoomFullException;
+import models.GameState;
+
+/**
+ * This benchmark measures the rejection path of API-calls, like a client that keeps asking for the minigame in the wrong {@code State}
+ * or keeps joining a full room. The call is rejected at a given depth below the caller, as the request threads of Play are deep,
+ * and the Exception is caught like {@code HomeController.Execute} does.
+ * The domain Exceptions do not record a stack trace; {@code stackTraceRejection} throws an ordinary Exception for comparison,
+ * which is what every rejection used to cost.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RejectionPathBenchmark {
+
+    @Param({"10", "100"})
+    public int depth; //the number of frames between the caller and the rejection
+
+    private GameState game; //a game in the LOBBY, where asking for the minigame is rejected
+
+    @Setup
+    public void setup() throws GameStateException {
+        game = GameState.CreateGame(0);
+        game.occupy();
+    }
+
+    @Benchmark
+    public String wrongStateRejection() {
+        try {
+            return String.valueOf(askMinigame(depth));
+        } catch (GameStateException e) {
+            return e.getMessage();
+        }
+    }
+
+    @Benchmark
+    public String fullRoomRejection() {
+        try {
+            return joinFullRoom(depth);
+        } catch (RoomFullException e) {
+            return e.getMessage();
+        }
+    }
+
+    @Benchmark
+    public String stackTraceRejection() {
+        try {
+            return rejectWithStackTrace(depth);
+        } catch (Exception e) {
+            return e.getMessage();
+        }
+    }
+
+    /* PRIVATE FUNCTIONS */
+
+    private int askMinigame(int frames) throws GameStateException {
+        return (frames == 0) ? game.getMinigame("firebase-0") : askMinigame(frames - 1);
+    }
+
+    private String joinFullRoom(int frames) throws RoomFullException {
+        if(frames == 0) throw new RoomFullException("The Room " + depth + " is already full!");
+
+        return joinFullRoom(frames - 1);
+    }
+
+    private String rejectWithStackTrace(int frames) throws Exception {
+        if(frames == 0) throw new Exception("The Room " + depth + " is already full!");
+
+        return rejectWithStackTrace(frames - 1);
+    }
+
+}
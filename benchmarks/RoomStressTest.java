@@ -0,0 +1,403 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import Exceptions.GameStateException;
+import models.GameRoom;
+import models.GameState;
+import models.GameStateCache;
+import models.RoomLock;
+import models.UserProfile;
+
+/**
+ * This class hammers the shared state of rooms and games from many threads at once and checks invariants that break when updates race:
+ * <ul>
+ * <li>the {@code RoomLock} never lets two operations on the same room overlap, and no increment made under it is lost</li>
+ * <li>threads occupying the same room all end up with one {@code GameState}, and only one of them occupies it</li>
+ * <li>concurrent getMinigame, sync, postReady and hasChanged calls on one {@code GameState} keep every player's result and state</li>
+ * <li>with a Database: concurrent reservations never hand out a room twice, concurrent joins and leaves lose no player,
+ *     flushed rooms are cleared completely and the counter of occupied rooms does not drift</li>
+ * </ul>
+ * Every check is repeated, as races only show up now and then. The Database checks need a MongoDB instance, by default on 127.0.0.1:28100
+ * with the database {@code loadtest} (set with {@code -Ddb.uri} and {@code -Ddb.name}), and are only run if {@code db} is passed; they create new users and at most {@code threads} rooms.
+ *
+ * Usage: {@code RoomStressTest [threads] [iterations] [db]}, by default {@code 16 2000}. Exits with 1 if a check failed.
+ */
+public class RoomStressTest {
+
+    /**
+     * A task that is run by every thread of a check.
+     */
+    private interface Task {
+        void run(int thread) throws Exception;
+    }
+
+    private final int threads; //the number of threads that run at the same time
+    private final int iterations; //how often every thread repeats its operation
+    private final String runID = Long.toString(System.currentTimeMillis(), 36); //keeps the users of different runs apart
+    private final ConcurrentLinkedQueue<String> errors = new ConcurrentLinkedQueue<>(); //the unexpected Exceptions of the current check
+    private int failed = 0; //the number of failed checks
+
+    /**
+     * Creates the stress test.
+     *
+     * @param threads The number of threads that run at the same time.
+     * @param iterations How often every thread repeats its operation.
+     */
+    public RoomStressTest(int threads, int iterations) {
+        this.threads = threads;
+        this.iterations = iterations;
+    }
+
+    public static void main(String[] args) throws Exception {
+        //never write to the server's Database by default, but to a throwaway instance and database
+        System.setProperty("db.uri", System.getProperty("db.uri", "mongodb://127.0.0.1:28100/?connectTimeoutMS=5000"));
+        System.setProperty("db.name", System.getProperty("db.name", "loadtest"));
+
+        int threads = (args.length > 0) ? Integer.parseInt(args[0]) : 16;
+        int iterations = (args.length > 1) ? Integer.parseInt(args[1]) : 2000;
+        boolean database = args.length > 2 && args[2].equals("db");
+
+        RoomStressTest test = new RoomStressTest(threads, iterations);
+        test.roomLock();
+        test.occupyRace();
+        test.gameRounds();
+
+        if(database) {
+            test.reserveAndLeave();
+            test.joinAndLeave();
+            test.flushDuringReservations();
+        }
+
+        System.out.println(test.failed == 0 ? "All checks passed." : test.failed + " checks failed.");
+        System.exit(test.failed == 0 ? 0 : 1);
+    }
+
+    /**
+     * This method checks the mutual exclusion of the {@code RoomLock}. Half of the threads take the lock blocking, the other half without blocking;
+     * all of them increment the same plain counter while holding it.
+     */
+    public void roomLock() throws InterruptedException {
+        int[] counter = new int[1];
+        AtomicInteger inside = new AtomicInteger();
+        LongAdder overlaps = new LongAdder();
+        ConcurrentLinkedQueue<CompletableFuture<Integer>> pending = new ConcurrentLinkedQueue<>();
+
+        parallel(thread -> {
+            for(int i = 0; i < iterations; i++) {
+                if(thread % 2 == 0) {
+                    CompletableFuture<Void> lock = RoomLock.lock(7);
+                    try {
+                        if(inside.incrementAndGet() != 1) overlaps.increment();
+                        counter[0]++;
+                        inside.decrementAndGet();
+                    } finally {
+                        RoomLock.unlock(lock);
+                    }
+                } else {
+                    pending.add(RoomLock.lockAsync(7, () -> {
+                        if(inside.incrementAndGet() != 1) overlaps.increment();
+                        counter[0]++;
+                        inside.decrementAndGet();
+
+                        return CompletableFuture.completedFuture(0);
+                    }).toCompletableFuture());
+                }
+            }
+        });
+
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).join();
+
+        //the last operation released the lock, so taking it again makes the counter visible
+        RoomLock.unlock(RoomLock.lock(7));
+
+        check("RoomLock excludes concurrent operations", overlaps.sum() == 0, overlaps.sum() + " overlaps");
+        check("RoomLock loses no update", counter[0] == threads * iterations, counter[0] + " of " + (threads * iterations) + " increments");
+    }
+
+    /**
+     * This method lets all threads occupy the same room at once, many times. Exactly one of them may succeed each time,
+     * and all of them must see the same {@code GameState} afterwards.
+     */
+    public void occupyRace() throws InterruptedException {
+        int rounds = Math.max(1, iterations / 10);
+        int wrongWinners = 0, splitGames = 0;
+
+        for(int r = 0; r < rounds; r++) {
+            GameStateCache.unoccupyRoom(98);
+            AtomicInteger winners = new AtomicInteger();
+            GameState[] seen = new GameState[threads];
+
+            parallel(thread -> {
+                try {
+                    GameStateCache.occupyRoom(98);
+                    winners.incrementAndGet();
+                } catch (GameStateException e) {
+                    //expected for all but one thread
+                }
+
+                seen[thread] = GameStateCache.getGameInstance(98);
+            });
+
+            if(winners.get() != 1) wrongWinners++;
+            if(new HashSet<>(Arrays.asList(seen)).size() != 1) splitGames++;
+        }
+
+        GameStateCache.unoccupyRoom(98);
+
+        check("A room is occupied exactly once", wrongWinners == 0, wrongWinners + " of " + rounds + " rounds had not exactly one winner");
+        check("Occupying threads share one GameState", splitGames == 0, splitGames + " of " + rounds + " rounds created more than one game");
+    }
+
+    /**
+     * This method plays rounds on one {@code GameState} where every player is driven by its own thread, while the other threads poll it.
+     * After every step, the results and states of all players are checked.
+     */
+    public void gameRounds() throws Exception {
+        List<String> players = new ArrayList<>(threads);
+        for(int i = 0; i < threads; i++)
+            players.add(runID + "-game-" + i);
+        //
+
+        GameState game = GameState.CreateGame(97);
+        game.occupy();
+        game.start(players.get(0), players, threads, true);
+
+        int rounds = Math.max(1, iterations / 50);
+        int lostResults = 0, wrongStates = 0;
+
+        for(int r = 0; r < rounds; r++) {
+            String round = String.valueOf(r);
+            game.setMinigame(players.get(0), 1, 0, new byte[0]);
+
+            parallel(thread -> {
+                game.hasChanged(players.get(thread));
+                game.getMinigame(players.get(thread));
+                game.askPlayerStates();
+            });
+            if(game.getState() != GameState.State.RUNNING) wrongStates++;
+
+            parallel(thread -> {
+                //the second sync of a player must be ignored
+                game.sync(players.get(thread), round + "/" + thread);
+                game.sync(players.get(thread), "late");
+                game.hasChanged(players.get(thread));
+            });
+            if(game.getState() != GameState.State.MINIGAME_END) wrongStates++;
+
+            List<String> results = new ArrayList<>(game.getResults());
+            for(int i = 0; i < threads; i++)
+                if(results.size() != threads || !results.get(i).equals(round + "/" + i)) lostResults++;
+            //
+
+            parallel(thread -> {
+                game.postReady(players.get(thread));
+                game.hasChanged(players.get(thread));
+            });
+            if(!game.askPlayerStates().stream().allMatch(s -> s.equals("READY"))) wrongStates++;
+
+            game.nextRound(players.get(0));
+        }
+
+        check("GameState loses no result", lostResults == 0, lostResults + " results lost or wrong");
+        check("GameState reaches every state", wrongStates == 0, wrongStates + " steps ended in the wrong state");
+    }
+
+    /**
+     * This method lets every thread reserve a room at the same time and then leave it again.
+     * No room may be handed out twice, and the counter of occupied rooms must return to where it was.
+     */
+    public void reserveAndLeave() throws Exception {
+        String[] owners = users("owner", threads);
+        int before = GameRoom.occupiedRooms();
+        int[] rooms = new int[threads];
+        Arrays.fill(rooms, -1);
+
+        parallel(thread -> rooms[thread] = GameRoom.requestGameRoom(owners[thread], 4, false));
+
+        Set<Integer> distinct = new HashSet<>();
+        int reserved = 0, strangers = 0;
+
+        for(int i = 0; i < threads; i++) {
+            if(rooms[i] < 0) continue;
+
+            reserved++;
+            distinct.add(rooms[i]);
+            if(!GameRoom.GameRoomInstance(rooms[i]).getUIDsRaw().equals(Arrays.asList(owners[i]))) strangers++;
+        }
+
+        check("No room is reserved twice", distinct.size() == reserved, reserved + " reservations got " + distinct.size() + " rooms");
+        check("Reserved rooms only hold their owner", strangers == 0, strangers + " rooms hold other players");
+        check("Occupied rooms are counted while reserved", GameRoom.occupiedRooms() == before + reserved, GameRoom.occupiedRooms() + " instead of " + (before + reserved));
+
+        parallel(thread -> {
+            if(rooms[thread] >= 0) GameRoom.leaveRoom(rooms[thread], owners[thread]);
+        });
+
+        int leftGames = 0;
+        for(int room : distinct)
+            if(hasGame(room)) leftGames++;
+        //
+
+        check("Occupied rooms do not drift", GameRoom.occupiedRooms() == before, GameRoom.occupiedRooms() + " instead of " + before);
+        check("Left rooms release their GameState", leftGames == 0, leftGames + " games were not released");
+    }
+
+    /**
+     * This method lets every thread join and leave the same room over and over, half of them with the non-blocking join.
+     * In the end only the owner may be left in the room; a lost update leaves a player behind or makes a leave fail.
+     */
+    public void joinAndLeave() throws Exception {
+        String owner = users("host", 1)[0];
+        String[] guests = users("guest", threads);
+        int room = GameRoom.requestGameRoom(owner, threads + 1, false);
+
+        parallel(thread -> {
+            for(int i = 0; i < iterations / 20; i++) {
+                if(thread % 2 == 0)
+                    GameRoom.joinRoom(room, guests[thread]);
+                else
+                    GameRoom.joinRoomAsync(room, guests[thread]).toCompletableFuture().join();
+                //
+
+                GameRoom.leaveRoom(room, guests[thread]);
+            }
+        });
+
+        List<String> left = GameRoom.GameRoomInstance(room).getUIDsRaw();
+        check("Joins and leaves lose no update", left.equals(Arrays.asList(owner)), "room holds " + left);
+
+        GameRoom.leaveRoom(room, owner);
+    }
+
+    /**
+     * This method flushes rooms over and over while other threads reserve rooms. A flush may clear a room that was just reserved,
+     * but every room must end up either reserved with its owner and its {@code GameState}, or cleared with its {@code GameState} released,
+     * and the counter of occupied rooms must match the rooms that are still reserved.
+     * Only the rooms reserved by this check are flushed, so rooms of other parties in the same Database are left alone.
+     */
+    public void flushDuringReservations() throws Exception {
+        String[] owners = users("flush", Math.max(1, threads / 2));
+        int before = GameRoom.occupiedRooms();
+        AtomicIntegerArray rooms = new AtomicIntegerArray(owners.length);
+        CountDownLatch reservations = new CountDownLatch(owners.length);
+
+        for(int i = 0; i < owners.length; i++)
+            rooms.set(i, -1);
+        //
+
+        parallel(thread -> {
+            if(thread < owners.length) {
+                try {
+                    rooms.set(thread, GameRoom.requestGameRoom(owners[thread], 4, false));
+                } finally {
+                    reservations.countDown();
+                }
+            } else {
+                //keeps flushing until every reservation is done
+                for(int i = 0; i < iterations / 20 || reservations.getCount() > 0; i++) {
+                    int room = rooms.get(i % owners.length);
+                    if(room >= 0) GameRoom.ForceFlush(room);
+                }
+            }
+        });
+
+        int reserved = 0, broken = 0;
+        for(int i = 0; i < owners.length; i++) {
+            int room = rooms.get(i);
+            if(room < 0) continue;
+
+            List<String> players = GameRoom.GameRoomInstance(room).getUIDsRaw();
+            boolean game = hasGame(room);
+
+            if(players.equals(Arrays.asList(owners[i])) && game)
+                reserved++;
+            else if(!players.isEmpty() || game)
+                broken++;
+            //
+        }
+
+        check("Flushed rooms are cleared completely", broken == 0, broken + " rooms are half flushed");
+        check("Flushing does not make the counter drift", GameRoom.occupiedRooms() == before + reserved, GameRoom.occupiedRooms() + " instead of " + (before + reserved));
+
+        for(int i = 0; i < owners.length; i++)
+            if(rooms.get(i) >= 0) GameRoom.ForceFlush(rooms.get(i));
+        //
+    }
+
+    /* PRIVATE FUNCTIONS */
+
+    /**
+     * This method runs a task on all threads at once and waits until every thread finished. Unexpected Exceptions and Errors are collected and printed.
+     *
+     * @param task The task, called with the number of the thread.
+     */
+    private void parallel(Task task) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+
+        for(int t = 0; t < threads; t++) {
+            int thread = t;
+
+            pool.execute(() -> {
+                try {
+                    start.await();
+                    task.run(thread);
+                } catch (Throwable e) {
+                    errors.add(e.getClass().getSimpleName() + ": " + e.getMessage());
+                }
+            });
+        }
+
+        start.countDown();
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+    }
+
+    private void check(String name, boolean ok, String detail) {
+        if(!errors.isEmpty()) {
+            ok = false;
+            detail += ", " + errors.size() + " unexpected Exceptions, first: " + errors.peek();
+            errors.clear();
+        }
+
+        if(!ok) failed++;
+
+        System.out.println((ok ? "PASS " : "FAIL ") + name + (ok ? "" : " (" + detail + ")"));
+    }
+
+    private static boolean hasGame(int roomID) {
+        try {
+            GameStateCache.getGameInstance(roomID);
+
+            return true;
+        } catch (GameStateException e) {
+            return false;
+        }
+    }
+
+    private String[] users(String role, int count) throws Exception {
+        String[] ids = new String[count];
+
+        for(int i = 0; i < count; i++) {
+            ids[i] = runID + "-" + role + "-" + i;
+            new UserProfile(ids[i], "stress-" + ids[i]);
+        }
+
+        return ids;
+    }
+
+}
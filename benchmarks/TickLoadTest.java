@@ -0,0 +1,167 @@
+package benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import interfaces.ITickSubscriber;
+import models.GameState;
+import models.LatencyHistogram;
+import models.TickBroadcaster;
+
+/**
+ * This class measures how many running rooms the {@code TickBroadcaster} sustains at which tick rate on this machine.
+ * For every combination of room count and tick rate, it puts that many {@code GameState}s into RUNNING, so their tick loops start,
+ * and counts the frames the subscribers receive during the measurement. A tick is late by the time between when it was due,
+ * going by the start of its loop and the tick rate, and when its frame arrived.
+ *
+ * The report contains, per combination, the frames that were due and delivered per second, the delivered frames per core,
+ * the CPU time the tick threads used per core and the lateness percentiles. A combination is sustained if nearly all due frames arrive
+ * and the lateness stays well below one tick period. Only in-memory classes are used, no Database is needed.
+ *
+ * Usage: {@code TickLoadTest [rooms] [rates] [players] [seconds]}, where rooms and rates are comma-separated lists,
+ * by default {@code 10,50,99 30,60,120 4 5}. At most 99 rooms exist.
+ */
+public class TickLoadTest {
+
+    private final int players; //the number of players per room
+    private final byte[] data = new byte[64]; //the synchronization data every player posted
+
+    /**
+     * Creates the load test.
+     *
+     * @param players The number of players per room.
+     */
+    public TickLoadTest(int players) {
+        this.players = players;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] rooms = list(args, 0, "10,50,99");
+        int[] rates = list(args, 1, "30,60,120");
+        int players = (args.length > 2) ? Integer.parseInt(args[2]) : 4;
+        int seconds = (args.length > 3) ? Integer.parseInt(args[3]) : 5;
+
+        TickLoadTest test = new TickLoadTest(players);
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        System.out.println(cores + " cores, " + players + " players per room, " + seconds + "s per measurement");
+        System.out.println(String.format("%6s %6s %10s %12s %9s %14s %11s %9s %9s", "rooms", "rate", "due/s", "delivered/s", "per core", "tick cpu/core", "late p50ms", "p99 ms", "max ms"));
+
+        //a short run first, so the scheduler threads and the frame code are warmed up
+        test.measure(Math.min(10, rooms[0]), rates[0], 1);
+
+        for(int r : rooms)
+            for(int rate : rates)
+                System.out.println(test.measure(r, rate, seconds));
+            //
+        //
+
+        System.exit(0);
+    }
+
+    /**
+     * This method runs one measurement.
+     *
+     * @param rooms The number of running rooms.
+     * @param rate The tick rate in ticks per second.
+     * @param duration The duration of the measurement in seconds.
+     * @return One line of the report.
+     */
+    public String measure(int rooms, int rate, int duration) throws Exception {
+        long period = 1_000_000_000L / rate;
+        LongAdder frames = new LongAdder();
+        LatencyHistogram late = new LatencyHistogram();
+        long[] started = new long[rooms + 1];
+        List<ITickSubscriber> subscribers = new ArrayList<>();
+
+        TickBroadcaster.setTickRate(rate);
+        long cpuBefore = tickCpuNanos();
+
+        for(int room = 1; room <= rooms; room++) {
+            int id = room;
+            ITickSubscriber s = (roomID, tick, frame) -> {
+                frames.increment();
+                late.record(Math.max(0, System.nanoTime() - (started[id] + tick * period)));
+            };
+
+            subscribers.add(s);
+            TickBroadcaster.subscribe(room, s);
+
+            started[room] = System.nanoTime();
+            run(room);
+        }
+
+        Thread.sleep(duration * 1000L);
+
+        long delivered = frames.sum();
+        long cpu = tickCpuNanos() - cpuBefore;
+
+        for(int room = 1; room <= rooms; room++) {
+            TickBroadcaster.stop(room);
+            TickBroadcaster.unsubscribe(room, subscribers.get(room - 1));
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        double due = (double) rooms * rate;
+        double perSecond = delivered / (double) duration;
+
+        return String.format("%6d %6d %10.0f %12.0f %9.0f %13.1f%% %11.3f %9.3f %9.3f",
+            rooms, rate, due, perSecond, perSecond / cores, 100.0 * cpu / (duration * 1e9 * cores),
+            late.percentile(0.5) / 1e3, late.percentile(0.99) / 1e3, late.percentile(1.0) / 1e3);
+    }
+
+    /* PRIVATE FUNCTIONS */
+
+    /**
+     * This method creates the game of a room and plays it into RUNNING, which starts its tick loop.
+     *
+     * @param room The ID of the room.
+     */
+    private void run(int room) throws Exception {
+        List<String> ids = new ArrayList<>(players);
+        for(int i = 0; i < players; i++)
+            ids.add("tick-" + room + "-" + i);
+        //
+
+        GameState game = GameState.CreateGame(room);
+        game.occupy();
+        game.start(ids.get(0), ids, players, true);
+        game.setMinigame(ids.get(game.getGMIndex()), 1, 0, new byte[0]);
+
+        for(String id : ids)
+            game.postPlayerData(id, data);
+        //
+
+        for(String id : ids)
+            game.getMinigame(id);
+        //
+    }
+
+    /**
+     * This method adds up the CPU time of all threads of the tick scheduler.
+     *
+     * @return The CPU time in nanoseconds.
+     */
+    private static long tickCpuNanos() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long sum = 0;
+
+        for(ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds()))
+            if(info != null && info.getThreadName().startsWith("tick-broadcaster-"))
+                sum += Math.max(0, threads.getThreadCpuTime(info.getThreadId()));
+            //
+        //
+
+        return sum;
+    }
+
+    private static int[] list(String[] args, int index, String fallback) {
+        return Arrays.stream(((args.length > index) ? args[index] : fallback).split(",")).mapToInt(Integer::parseInt).toArray();
+    }
+
+}
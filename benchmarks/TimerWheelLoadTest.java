@@ -0,0 +1,119 @@
+package benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+import models.LatencyHistogram;
+import models.TimerWheel;
+
+/**
+ * This class measures the {@code TimerWheel} with a large number of pending timeouts, like the round deadlines of many rooms.
+ * It schedules the timeouts with delays spread over the configured range and reports the cost of scheduling and cancelling,
+ * the heap used per pending timeout, the CPU time the driver thread uses while they are pending and how late the timeouts fire.
+ *
+ * Usage: {@code TimerWheelLoadTest [timeouts] [maxDelaySeconds] [tickMillis]}, by default {@code 100000 5 50}.
+ */
+public class TimerWheelLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        int count = (args.length > 0) ? Integer.parseInt(args[0]) : 100_000;
+        long maxDelay = ((args.length > 1) ? Long.parseLong(args[1]) : 5) * 1000;
+        long tickMillis = (args.length > 2) ? Long.parseLong(args[2]) : 50;
+
+        TimerWheel wheel = new TimerWheel(tickMillis);
+        System.out.println(count + " timeouts, delays up to " + maxDelay + "ms, " + tickMillis + "ms ticks");
+
+        //warm up the schedule and cancel paths
+        for(int i = 0; i < count; i++)
+            wheel.schedule(() -> {}, maxDelay).cancel();
+        //
+
+        //schedule and cancel cost, and the memory of the pending timeouts
+        long heapBefore = usedHeap();
+        TimerWheel.Timeout[] timeouts = new TimerWheel.Timeout[count];
+
+        long start = System.nanoTime();
+        for(int i = 0; i < count; i++)
+            timeouts[i] = wheel.schedule(() -> {}, 60_000 + ThreadLocalRandom.current().nextLong(maxDelay));
+        //
+        long scheduled = System.nanoTime() - start;
+        long heapAfter = usedHeap();
+
+        long driverBefore = driverCpuNanos();
+        Thread.sleep(2000);
+        long driver = driverCpuNanos() - driverBefore;
+
+        System.out.println(String.format("schedule: %.0f ns per timeout, %d pending, %.0f bytes per pending timeout",
+            scheduled / (double) count, wheel.pending(), (heapAfter - heapBefore) / (double) count));
+        System.out.println(String.format("driver thread with %d pending: %.2f%% of one core", wheel.pending(), 100.0 * driver / 2e9));
+
+        start = System.nanoTime();
+        for(TimerWheel.Timeout t : timeouts)
+            t.cancel();
+        //
+        long cancelled = System.nanoTime() - start;
+
+        System.out.println(String.format("cancel: %.0f ns per timeout, %d pending", cancelled / (double) count, wheel.pending()));
+
+        //expiry: every timeout records how late it fired relative to its delay
+        LatencyHistogram late = new LatencyHistogram();
+        CountDownLatch fired = new CountDownLatch(count);
+
+        driverBefore = driverCpuNanos();
+        start = System.nanoTime();
+        for(int i = 0; i < count; i++) {
+            long delay = 1 + ThreadLocalRandom.current().nextLong(maxDelay);
+            long due = System.nanoTime() + delay * 1_000_000L;
+
+            wheel.schedule(() -> {
+                late.record(Math.max(0, System.nanoTime() - due));
+                fired.countDown();
+            }, delay);
+        }
+
+        fired.await();
+        long elapsed = System.nanoTime() - start;
+        driver = driverCpuNanos() - driverBefore;
+
+        System.out.println(String.format("expiry: %d fired in %.1fs, driver used %.2f%% of one core, late p50 %.1fms p99 %.1fms max %.1fms",
+            late.count(), elapsed / 1e9, 100.0 * driver / elapsed,
+            late.percentile(0.5) / 1e3, late.percentile(0.99) / 1e3, late.percentile(1.0) / 1e3));
+
+        System.exit(0);
+    }
+
+    /* PRIVATE FUNCTIONS */
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime rt = Runtime.getRuntime();
+
+        for(int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    /**
+     * This method returns the CPU time of the driver threads of all timer wheels.
+     *
+     * @return The CPU time in nanoseconds.
+     */
+    private static long driverCpuNanos() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long sum = 0;
+
+        for(ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds()))
+            if(info != null && info.getThreadName().equals("timer-wheel"))
+                sum += Math.max(0, threads.getThreadCpuTime(info.getThreadId()));
+            //
+        //
+
+        return sum;
+    }
+
+}
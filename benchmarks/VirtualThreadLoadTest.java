@@ -0,0 +1,147 @@
+package benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import akka.actor.ActorSystem;
+import db.DatabaseExecutionContext;
+import models.JsonFactory;
+import models.LatencyHistogram;
+import play.libs.concurrent.HttpExecution;
+
+/**
+ * This class compares the two execution modes of the {@code DatabaseExecutionContext} at a high number of concurrent API-calls:
+ * the bounded {@code database.dispatcher} pool and one virtual thread per API-call ({@code database.virtualThreads = true}).
+ * Every API-call blocks for a configured time, like a Mongo call, and then encodes a response with the {@code JsonFactory}.
+ * The blocking call is a stand-in, so no MongoDB instance is needed. A fixed number of API-calls is kept in flight until all calls are made.
+ *
+ * The report contains the throughput, the latency percentiles and the peak number of live threads of every mode.
+ * Virtual threads need Java 21 or later; on older runtimes that mode is skipped.
+ *
+ * Usage: {@code VirtualThreadLoadTest [concurrency] [calls] [dbMillis] [poolSize]}, by default {@code 10000 50000 20 64}.
+ */
+public class VirtualThreadLoadTest {
+
+    private final int concurrency; //the number of API-calls in flight
+    private final int calls; //the number of API-calls per mode
+    private final long dbMillis; //the time every API-call blocks
+
+    /**
+     * Creates the load test.
+     *
+     * @param concurrency The number of API-calls in flight.
+     * @param calls The number of API-calls per mode.
+     * @param dbMillis The time every API-call blocks.
+     */
+    public VirtualThreadLoadTest(int concurrency, int calls, long dbMillis) {
+        this.concurrency = concurrency;
+        this.calls = calls;
+        this.dbMillis = dbMillis;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int concurrency = argument(args, 0, 10_000);
+        int calls = argument(args, 1, 50_000);
+        int dbMillis = argument(args, 2, 20);
+        int poolSize = argument(args, 3, 64);
+
+        VirtualThreadLoadTest test = new VirtualThreadLoadTest(concurrency, calls, dbMillis);
+        boolean virtual = supportsVirtualThreads();
+
+        System.out.println(concurrency + " concurrent calls, " + calls + " calls per mode, " + dbMillis + "ms per call, pool of " + poolSize + ", Java " + Runtime.version().feature());
+        System.out.println(String.format("%-14s %10s %10s %10s %10s %13s", "mode", "calls/s", "p50 ms", "p99 ms", "max ms", "peak threads"));
+
+        System.out.println(test.measure("pool " + poolSize, context(poolSize, false)));
+
+        if(virtual)
+            System.out.println(test.measure("virtual", context(poolSize, true)));
+        else
+            System.out.println(String.format("%-14s skipped, this runtime has no virtual threads", "virtual"));
+        //
+
+        System.exit(0);
+    }
+
+    /**
+     * This method makes all API-calls on the execution context and keeps {@code concurrency} of them in flight.
+     *
+     * @param mode The name of the mode in the report.
+     * @param context The execution context the API-calls run on.
+     * @return One line of the report.
+     */
+    public String measure(String mode, DatabaseExecutionContext context) throws InterruptedException {
+        Semaphore inFlight = new Semaphore(concurrency);
+        LatencyHistogram latency = new LatencyHistogram();
+        ManagementFactory.getThreadMXBean().resetPeakThreadCount();
+
+        long start = System.nanoTime();
+        for(int i = 0; i < calls; i++) {
+            inFlight.acquire();
+            long submitted = System.nanoTime();
+
+            CompletableFuture.supplyAsync(this::call, HttpExecution.fromThread(context)).whenComplete((result, e) -> {
+                latency.recordSince(submitted);
+                inFlight.release();
+            });
+        }
+
+        inFlight.acquire(concurrency);
+        long elapsed = System.nanoTime() - start;
+
+        return String.format("%-14s %10.0f %10.1f %10.1f %10.1f %13d", mode, calls / (elapsed / 1e9),
+            latency.percentile(0.5) / 1e3, latency.percentile(0.99) / 1e3, latency.percentile(1.0) / 1e3,
+            ManagementFactory.getThreadMXBean().getPeakThreadCount());
+    }
+
+    /* PRIVATE FUNCTIONS */
+
+    /**
+     * This method is the stand-in for a Database-bound API-call: it blocks like a Mongo call and encodes a response.
+     *
+     * @return The size of the response.
+     */
+    private int call() {
+        try {
+            Thread.sleep(dbMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        return JsonFactory.toJson(dbMillis).hashCode();
+    }
+
+    /**
+     * This method creates an execution context in the specified mode.
+     *
+     * @param poolSize The size of the bounded pool.
+     * @param virtual Whether every API-call runs on its own virtual thread.
+     * @return The execution context.
+     */
+    private static DatabaseExecutionContext context(int poolSize, boolean virtual) {
+        Config config = ConfigFactory.parseString(
+            "database.dispatcher { executor = \"thread-pool-executor\", throughput = 1, thread-pool-executor.fixed-pool-size = " + poolSize + " }\n" +
+            "database.virtualThreads = " + virtual
+        ).withFallback(ConfigFactory.load());
+
+        return new DatabaseExecutionContext(ActorSystem.create("virtual-" + virtual, config), config);
+    }
+
+    private static boolean supportsVirtualThreads() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static int argument(String[] args, int index, int fallback) {
+        return (args.length > index) ? Integer.parseInt(args[index]) : fallback;
+    }
+
+}
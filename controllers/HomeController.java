@@ -4,18 +4,30 @@ import models.*;
 import models.GameState.PlayerState;
 import models.Logger.Tags;
 import Exceptions.*;
+import interfaces.IAsyncExecution;
 import interfaces.ITryCatchExecution;
+import db.AdmissionControl;
+import db.DatabaseExecutionContext;
 import db.TestDB;
 import db.UserProfileDatabase;
 import play.libs.Json;
+import play.libs.concurrent.HttpExecution;
 import play.mvc.*;
 import play.data.DynamicForm;
 import play.data.FormFactory;
+import akka.util.ByteString;
+import org.bson.Document;
 
 import java.net.URLDecoder;
+import java.security.MessageDigest;
 import java.nio.charset.StandardCharsets;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+import javax.inject.Inject;
 
 
 /**
@@ -26,16 +38,48 @@ public class HomeController extends Controller {
     /** TODO:
      * Make Game Synchronization logic.
      * Make Game Synchronization API.
-     * Optimize BSON-JSON-Document parsing (way later though)
-     *  theres a problem with how objects are stored/returned from the DB:
-     *   class instance is parsed to and from a bson document
-     *   class instance is parsed to a json document
-     *  maybe figure out a way to parse from bson to json without intermediate class instance?
+     * Optimize BSON-JSON-Document parsing for the remaining API-calls
+     *  GetUserInfo and SearchFriend already transform the stored bson document directly
      */
 
     //for testing
     private static int connections = 0;
 
+    private final DatabaseExecutionContext dbContext; //the executor for all API-calls that block on the Database
+
+    private static final RouteMetrics userInfoRoute = RouteMetrics.named("GetUserInfo"); //counts the cached profiles that are answered before ExecuteAsync
+    private static final RouteMetrics maximumPlayersRoute = RouteMetrics.named("MaximumPlayersOfRoom"); //counts the 304 responses that are answered before ExecuteAsync
+    private static final RouteMetrics currentPlayersRoute = RouteMetrics.named("currentPlayers"); //counts the 304 responses that are answered before ExecuteAsync
+
+    static {
+        Metrics.gauge("rooms_occupied", "Occupied rooms", GameRoom::occupiedRooms);
+
+        for(GameState.State state : GameState.State.values())
+            Metrics.gauge("games", "Running games by State", () -> GameStateCache.countInState(state), "state", state.name());
+        //
+
+        Metrics.gauge("cache_entries", "Entries per cache", ProfileResponseCache::size, "cache", "profileResponses");
+        Metrics.gauge("cache_entries", "Entries per cache", () -> UserProfileDatabase.getInstance().verifiedUsers(), "cache", "verifiedUsers");
+        Metrics.gauge("log_messages_dropped", "Log messages dropped because the log ring was full", Logger::dropped);
+
+        for(AdmissionControl.Priority p : AdmissionControl.Priority.values())
+            Metrics.gauge("db_admission_queued", "Database transactions waiting for admission by priority", () -> AdmissionControl.queued(p), "priority", p.name());
+        //
+
+        Metrics.gauge("db_admission_in_use", "Database transactions admitted and running", AdmissionControl::inUse);
+    }
+
+    /**
+     * Creates the controller. API-calls that touch the Database run on the {@code DatabaseExecutionContext},
+     * all other API-calls run directly on Play's default dispatcher.
+     * 
+     * @param dbContext The execution context for blocking Database calls.
+     */
+    @Inject
+    public HomeController(DatabaseExecutionContext dbContext) {
+        this.dbContext = dbContext;
+    }
+
 
     /**
      * An action that renders an HTML page with a welcome message.
@@ -54,32 +98,31 @@ public class HomeController extends Controller {
             //return ok("Got Request");
     }
 
-    public Result test2(int val,String s1, String s2) {
+    public CompletionStage<Result> test2(int val,String s1, String s2) {
         Logger.Log(Tags.INF,"Running DB test...");
-        Logger.Log(Tags.CLL,"Called /db/test/"+s1+"/"+s2);
-
-       TestObject test = new TestObject(val);
-       test.setStuff1(s1);
-       test.setStuff2(s2);
+        Logger.Log(Tags.CLL,"Called /db/test",s1,s2);
 
-       if(TestDB.getInstance().insert(test) != 0) {
-            Logger.Log(Tags.FLR,"Insert failed. Returning false.");
-            return ok("##ERR");
-       }
+        return CompletableFuture.supplyAsync(() -> {
+            TestObject test = new TestObject(val);
+            test.setStuff1(s1);
+            test.setStuff2(s2);
 
-       test = TestDB.getInstance().find(String.valueOf(val));
+            if(TestDB.getInstance().insert(test) != 0) {
+                Logger.Log(Tags.FLR,"Insert failed. Returning false.");
+                return ok("##ERR");
+            }
 
-       return ok(test.toString());
+            return ok(TestDB.getInstance().find(String.valueOf(val)).toString());
+        }, HttpExecution.fromThread(dbContext));
     }
 
-    public Result testFind(int val) {
+    public CompletionStage<Result> testFind(int val) {
         Logger.Log(Tags.INF,"Running DB test...");
-        Logger.Log(Tags.CLL,"Called /db/test/"+val);
-
-        TestObject test = TestDB.getInstance().find(String.valueOf(val));
-
-        return ok(test.toString());
+        Logger.Log(Tags.CLL,"Called /db/test",val);
 
+        return CompletableFuture.supplyAsync(
+            () -> ok(TestDB.getInstance().find(String.valueOf(val)).toString()),
+            HttpExecution.fromThread(dbContext));
     }
 
     /**
@@ -107,11 +150,11 @@ public class HomeController extends Controller {
      *           streaks:
      *             [..]          
      */
-    public Result Register(String firebaseID, String username) {
+    public CompletionStage<Result> Register(String firebaseID, String username) {
         //registration can fail, needs to be caught
         Logger.Log(Tags.CLL, "called /db/register",firebaseID,username);
         
-        return Execute(new ITryCatchExecution(){
+        return ExecuteAsync(AdmissionControl.Priority.LOW, new ITryCatchExecution(){
             public Result Try() throws Exception  {
                 return JsonFactory.toJson(new UserProfile(firebaseID,username));
             }
@@ -122,6 +165,10 @@ public class HomeController extends Controller {
      * This Method retrieves all relevant user information that is to be displayed on a user's profile.
      * If the user could not be found, an error message is returned instead.
      *
+     * The serialized profile is cached until the profile changes. It is sent with an ETag; a client that already has the current
+     * profile gets an empty 304 response instead.
+     *
+     * @param request The request of the client, checked for an If-None-Match header.
      * @param firebaseID The unique Firebase ID used for the Database lookup
      * @return Returns a JSON-String that contains the result of the API-call and user information. If STATUS is 1, USER does not exist.
      *         Object Layout:
@@ -130,12 +177,27 @@ public class HomeController extends Controller {
      *         VALUE:
      *          ...
      */
-    public Result GetUserInfo(String firebaseID) {
+    public CompletionStage<Result> GetUserInfo(Http.Request request, String firebaseID) {
         Logger.Log(Tags.CLL,"called /db/info",firebaseID);
 
-        return Execute(new ITryCatchExecution() {
+        //cached profiles are served without leaving the request thread
+        long start = System.nanoTime();
+        ProfileResponseCache.Entry cached;
+        if((cached = ProfileResponseCache.lookup(firebaseID)) != null) {
+            Result result = JsonFactory.cachedJson(cached.getBody(), cached.getETag(), request);
+            userInfoRoute.finished(start);
+
+            return CompletableFuture.completedFuture(result);
+        }
+
+        return ExecuteAsync(AdmissionControl.Priority.LOW, new ITryCatchExecution() {
             public Result Try() throws Exception  {
-                return JsonFactory.toJson(UserProfile.findUser(firebaseID));
+                long stamp = ProfileResponseCache.stamp(firebaseID);
+
+                Document user = UserProfile.findOwnUserDocument(firebaseID);
+                ProfileResponseCache.Entry entry = ProfileResponseCache.put(firebaseID, stamp, JsonFactory.userBody(user, UserProfile.findRelatedNames(user)));
+
+                return JsonFactory.cachedJson(entry.getBody(), entry.getETag(), request);
             }
         });
     }
@@ -151,12 +213,13 @@ public class HomeController extends Controller {
      *         USER:
      *          ...
      */
-    public Result SearchFriend(String username) {
+    public CompletionStage<Result> SearchFriend(String username) {
         Logger.Log(Tags.CLL,"called /db/addFriend/search",username);
 
-        return Execute(new ITryCatchExecution() {
+        return ExecuteAsync(AdmissionControl.Priority.LOW, new ITryCatchExecution() {
             public Result Try() throws Exception  {
-                return JsonFactory.toJson((UserProfile.findUserByName(username)));
+                Document user = UserProfile.findUserDocumentByName(username);
+                return JsonFactory.toJson(user, UserProfile.findRelatedNames(user));
             }
         });
     }
@@ -171,10 +234,10 @@ public class HomeController extends Controller {
      *         STATUS:
      *         MESSAGE:
      */ 
-    public Result AddFriend(String firebaseID, String username) {
+    public CompletionStage<Result> AddFriend(String firebaseID, String username) {
         Logger.Log(Tags.CLL, "called /db/addFriend",firebaseID,username);
 
-        return Execute(new ITryCatchExecution() {
+        return ExecuteAsync(AdmissionControl.Priority.LOW, new ITryCatchExecution() {
             public Result Try() throws Exception  {
                 UserProfile.findUser(firebaseID).addFriend(username);
                 return JsonFactory.toJson();
@@ -182,8 +245,8 @@ public class HomeController extends Controller {
         });
     }
 
-    public Result AddStreak(String firebaseID, String username, int streak) {
-        return Execute(new ITryCatchExecution(){
+    public CompletionStage<Result> AddStreak(String firebaseID, String username, int streak) {
+        return ExecuteAsync(AdmissionControl.Priority.LOW, new ITryCatchExecution(){
             public Result Try() throws Exception {
                 UserProfile.findUser(firebaseID).addStreak(username, streak);
                 return JsonFactory.toJson();
@@ -191,8 +254,8 @@ public class HomeController extends Controller {
         });   
     }
 
-    public Result UpdateStreak(String firebaseID, String username, int streak) {
-        return Execute(new ITryCatchExecution(){
+    public CompletionStage<Result> UpdateStreak(String firebaseID, String username, int streak) {
+        return ExecuteAsync(AdmissionControl.Priority.LOW, new ITryCatchExecution(){
             public Result Try() throws Exception {
                 UserProfile.findUser(firebaseID).updateStreak(username, streak);
                 return JsonFactory.toJson();
@@ -200,8 +263,8 @@ public class HomeController extends Controller {
         });
     }
 
-    public Result RemoveStreak(String firebaseID, String username) {
-        return Execute(new ITryCatchExecution(){
+    public CompletionStage<Result> RemoveStreak(String firebaseID, String username) {
+        return ExecuteAsync(AdmissionControl.Priority.LOW, new ITryCatchExecution(){
             public Result Try() throws Exception {
                 UserProfile.findUser(firebaseID).removeStreak(username);
                 return JsonFactory.toJson();
@@ -223,13 +286,16 @@ public class HomeController extends Controller {
      *         STATUS:
      *         MESSAGE:
      */
-    public Result JoinRoom(String firebaseID, int roomID) {
-        Logger.Log(Tags.CLL,"called /gameSession/joinSession",firebaseID,String.valueOf(roomID));
+    public CompletionStage<Result> JoinRoom(String firebaseID, int roomID) {
+        Logger.Log(Tags.CLL,"called /gameSession/joinSession",firebaseID,roomID);
         
-        return Execute(new ITryCatchExecution() {
-            public Result Try() throws Exception  {
-                GameRoom.joinRoom(roomID, firebaseID);
-                return JsonFactory.toJson();
+        return ExecuteStage(new IAsyncExecution() {
+            public CompletionStage<Result> Try(Tracer.Span trace) throws Exception  {
+                return GameRoom.joinRoomAsync(roomID, firebaseID, trace).thenApply(joined -> {
+                    try (Tracer.Span span = Tracer.span(trace, "JsonFactory.toJson")) {
+                        return JsonFactory.toJson();
+                    }
+                });
             }
         });
 
@@ -246,10 +312,10 @@ public class HomeController extends Controller {
      *         STATUS:
      *         MESSAGE:
      */
-    public Result LeaveRoom(String firebaseID, int roomID) {
-        Logger.Log(Tags.CLL,"called /gameSession/leaveSession",firebaseID,String.valueOf(roomID));
+    public CompletionStage<Result> LeaveRoom(String firebaseID, int roomID) {
+        Logger.Log(Tags.CLL,"called /gameSession/leaveSession",firebaseID,roomID);
         
-        return Execute(new ITryCatchExecution() {
+        return ExecuteAsync(new ITryCatchExecution() {
             public Result Try() throws Exception  {
                 GameRoom.leaveRoom(roomID, firebaseID);
                 return JsonFactory.toJson();
@@ -268,10 +334,10 @@ public class HomeController extends Controller {
      *          STATUS:
      *          MESSAGE:
      */
-    public Result ReserveRoom(String firebaseID, int maxPlayers) {
+    public CompletionStage<Result> ReserveRoom(String firebaseID, int maxPlayers) {
         Logger.Log(Tags.CLL,"called /gameSession/createSession",firebaseID);
         
-        return Execute(new ITryCatchExecution() {
+        return ExecuteAsync(new ITryCatchExecution() {
             public Result Try() throws Exception  {
                 return JsonFactory.toJson(GameRoom.requestGameRoom(firebaseID, maxPlayers,false));
             }
@@ -281,23 +347,37 @@ public class HomeController extends Controller {
 
     /**
      * Retrieves the Maximum amount of players for the given {@code GameRoom} instance.
+     * The response carries an ETag; if the room did not change since, the client gets an empty 304 response without a Database lookup.
      * 
+     * @param request The request of the client, checked for an If-None-Match header.
      * @param roomID ID of the {@code GameRoom}.
      * @return A JSON-String containing the maximum amount of players.
      */
-    public Result MaximumPlayersOfRoom(int roomID) {
+    public CompletionStage<Result> MaximumPlayersOfRoom(Http.Request request, int roomID) {
         //logger..
 
-        return Execute(new ITryCatchExecution(){
+        long start = System.nanoTime();
+        String etag = JsonFactory.etag(GameRoom.versionTag(roomID));
+        if(JsonFactory.notModified(etag, request)) {
+            maximumPlayersRoute.finished(start);
+            return CompletableFuture.completedFuture(JsonFactory.notModified(etag));
+        }
+
+        return ExecuteAsync(new ITryCatchExecution(){
             public Result Try() throws Exception {
-                return JsonFactory.toJson(GameRoom.maximumPlayers(roomID));
+                GameRoom room = GameRoom.GameRoomInstance(roomID);
+
+                //tagged with the version the lookup read, as the room can have changed since the tag above
+                return JsonFactory.toJson(room.maximumPlayers()).withHeader(Http.HeaderNames.ETAG, JsonFactory.etag(room.versionTag()));
             }
         });
     }
 
     /**
      * This method returns a JSON-String containing all current players of the room.
+     * The response carries an ETag; if the room did not change since, the client gets an empty 304 response without a Database lookup.
      *
+     * @param request The request of the client, checked for an If-None-Match header.
      * @param roomID  The ID of the room the players are supposed to be retrieved from.
      * @return A JSON-Object containing all players as an array. 
      *         If an Exception occurs, there is no USERS JSON-Array.
@@ -308,12 +388,22 @@ public class HomeController extends Controller {
      *           [..]
      * 
      */
-    public Result currentPlayers(int roomID) {
-        Logger.Log(Tags.CLL,"called /gameSession/curUsers",String.valueOf(roomID));
+    public CompletionStage<Result> currentPlayers(Http.Request request, int roomID) {
+        long start = System.nanoTime();
+        String etag = JsonFactory.etag(GameRoom.versionTag(roomID));
+        if(JsonFactory.notModified(etag, request)) {
+            currentPlayersRoute.finished(start);
+            return CompletableFuture.completedFuture(JsonFactory.notModified(etag));
+        }
 
-        return Execute(new ITryCatchExecution() {
+        Logger.Log(Tags.CLL,"called /gameSession/curUsers",roomID);
+
+        return ExecuteAsync(new ITryCatchExecution() {
             public Result Try() throws Exception  {
-                return JsonFactory.toJson(GameRoom.getCurrentPlayers(roomID));
+                GameRoom room = GameRoom.GameRoomInstance(roomID);
+
+                //tagged with the version the lookup read, as the room can have changed since the tag above
+                return JsonFactory.toJson(room.currentPlayers()).withHeader(Http.HeaderNames.ETAG, JsonFactory.etag(room.versionTag()));
             }
         });
     }
@@ -325,10 +415,10 @@ public class HomeController extends Controller {
      * @param firebaseID The Firebase ID of the user checking for an update.
      * @return A Status JSON-Object containing the update information.
      */
-    public Result RoomUpdated(String firebaseID ,int roomID) {
-        Logger.Log(Tags.CLL,"called /gameSession/update",String.valueOf(roomID));
+    public CompletionStage<Result> RoomUpdated(String firebaseID ,int roomID) {
+        Logger.Log(Tags.CLL,"called /gameSession/update",roomID);
 
-        return Execute(new ITryCatchExecution() {
+        return ExecuteAsync(new ITryCatchExecution() {
             public Result Try() throws Exception  {
                 return JsonFactory.toJson(GameRoom.checkUpdate(firebaseID, roomID));
             }
@@ -349,10 +439,10 @@ public class HomeController extends Controller {
      * @param roomID ID of the corresponding {@code GameState}.
      * @return JSON-String status message.
      */
-    public Result StartGame(String firebaseID, int roomID) {
-        Logger.Log(Tags.CLL,"called /ingame/start",firebaseID,String.valueOf(roomID));
+    public CompletionStage<Result> StartGame(String firebaseID, int roomID) {
+        Logger.Log(Tags.CLL,"called /ingame/start",firebaseID,roomID);
 
-        return Execute(new ITryCatchExecution() {
+        return ExecuteAsync(new ITryCatchExecution() {
             public Result Try() throws Exception  {
                 GameStateCache.startGame(firebaseID, GameRoom.GameRoomInstance(roomID));
                 return JsonFactory.toJson();
@@ -362,18 +452,38 @@ public class HomeController extends Controller {
 
     /* PLAYER CALLS */
 
+    /**
+     * Retrieves everything a client can see of the game in one call: the {@code State}, GMIndex, minigame, sociality,
+     * all {@code PlayerState}s, the results and the offset of the newest event.
+     * The response is served from a cache that is only renewed when the game changes.
+     * 
+     * @param request The request of the client. {@code Accept: application/cbor} selects a CBOR response.
+     * @param roomID ID of the corresponding {@code GameState}.
+     * @return JSON-String containing the snapshot.
+     */
+    public Result Snapshot(Http.Request request, int roomID) {
+        //logger..
+
+        return Execute(request, new ITryCatchExecution() {
+            public Result Try() throws Exception {
+                return JsonFactory.cachedJson(GameStateCache.getGameInstance(roomID).snapshot());
+            }
+        });
+    }
+
     /* PRE-GAME FUNCTIONS */
 
     /**
      * Used to ask the server about the current state of the game.
      * 
+     * @param request The request of the client. {@code Accept: application/cbor} selects a CBOR response.
      * @param roomID ID of the corresponding {@code GameState}.
      * @return JSON-String status message containing the current {@code State} of the game.
      */
-    public Result AskState(int roomID) {
-        Logger.Log(Tags.CLL,"called /ingame/askState",String.valueOf(roomID));
+    public Result AskState(Http.Request request, int roomID) {
+        Logger.Log(Tags.CLL,"called /ingame/askState",roomID);
 
-        return Execute(new ITryCatchExecution() {
+        return Execute(request, new ITryCatchExecution() {
             public Result Try() throws Exception {
                 return JsonFactory.toJson(GameStateCache.getGameInstance(roomID).getState());
             }
@@ -383,13 +493,14 @@ public class HomeController extends Controller {
     /**
      * Retrieves the GMIndex randomly assigned by the Server.
      * 
+     * @param request The request of the client. {@code Accept: application/cbor} selects a CBOR response.
      * @param roomID ID of the corresponding {@code GameState}.
      * @return JSON-String containing the GMIndex. 
      */
-    public Result GetGMIndex(int roomID) {
-        Logger.Log(Tags.CLL,"called /ingame/GMIndex",String.valueOf(roomID));
+    public Result GetGMIndex(Http.Request request, int roomID) {
+        Logger.Log(Tags.CLL,"called /ingame/GMIndex",roomID);
 
-        return Execute(new ITryCatchExecution() {
+        return Execute(request, new ITryCatchExecution() {
             public Result Try() throws Exception {
                 return JsonFactory.toJson(GameStateCache.getGameInstance(roomID).getGMIndex());
             }
@@ -399,14 +510,15 @@ public class HomeController extends Controller {
     /**
      * Retrieves the Minigame the GM chose.
      * 
+     * @param request The request of the client. {@code Accept: application/cbor} selects a CBOR response.
      * @param firebaseID ID of the user asking for the Minigame - important for {@code GameState}
      * @param roomID ID of the corresponding {@code GameState}.
      * @return JSON-String containing the Minigame ID.
      */
-    public Result GetMinigame(String firebaseID, int roomID) {
-        Logger.Log(Tags.CLL,"called /ingame/minigame",firebaseID,String.valueOf(roomID));
+    public Result GetMinigame(Http.Request request, String firebaseID, int roomID) {
+        Logger.Log(Tags.CLL,"called /ingame/minigame",firebaseID,roomID);
 
-        return Execute(new ITryCatchExecution() {
+        return Execute(request, new ITryCatchExecution() {
             public Result Try() throws Exception {
                 return JsonFactory.toJson(GameStateCache.getGameInstance(roomID).getMinigame(firebaseID));
             }
@@ -420,11 +532,27 @@ public class HomeController extends Controller {
      * @return JSON-String containing a String that represents the data.
      */
     public Result GetInitValues(int roomID) {
-        Logger.Log(Tags.CLL,"called /ingame/initValues",String.valueOf(roomID));
+        Logger.Log(Tags.CLL,"called /ingame/initValues",roomID);
 
         return Execute(new ITryCatchExecution(){
             public Result Try() throws Exception {
-                return JsonFactory.toJson(GameStateCache.getGameInstance(roomID).getInitialValues());
+                return JsonFactory.toJson(new String(GameStateCache.getGameInstance(roomID).getInitialValues(), StandardCharsets.UTF_8));
+            }
+        });
+    }
+
+    /**
+     * Retrieves the initial game values the GM calculated as raw bytes.
+     * 
+     * @param roomID ID of the corresponding {@code GameState}.
+     * @return The unaltered initial values as a length-prefixed payload in {@code application/octet-stream}.
+     */
+    public Result GetInitValuesBinary(int roomID) {
+        Logger.Log(Tags.CLL,"called /ingame/initValues/binary",roomID);
+
+        return Execute(new ITryCatchExecution(){
+            public Result Try() throws Exception {
+                return JsonFactory.toPayload(GameStateCache.getGameInstance(roomID).getInitialValues());
             }
         });
     }
@@ -432,13 +560,14 @@ public class HomeController extends Controller {
     /**
      * Retrieve the sociality the GM calculated.
      * 
+     * @param request The request of the client. {@code Accept: application/cbor} selects a CBOR response.
      * @param roomID ID of the corresponding {@code GameState}.
      * @return 
      */
-    public Result GetSociality(int roomID) {
-        Logger.Log(Tags.CLL,"called /ingame/getSociality",String.valueOf(roomID));
+    public Result GetSociality(Http.Request request, int roomID) {
+        Logger.Log(Tags.CLL,"called /ingame/getSociality",roomID);
 
-        return Execute(new ITryCatchExecution() {
+        return Execute(request, new ITryCatchExecution() {
             public Result Try() throws Exception {
                 return JsonFactory.toJson(GameStateCache.getGameInstance(roomID).getSociality());
             }
@@ -460,7 +589,27 @@ public class HomeController extends Controller {
 
         return Execute(new ITryCatchExecution() {
             public Result Try() throws Exception {
-                GameStateCache.getGameInstance(roomID).postPlayerData(firebaseID, data);
+                GameStateCache.getGameInstance(roomID).postPlayerData(firebaseID, data.getBytes(StandardCharsets.UTF_8));
+                return JsonFactory.toJson();
+            }
+        });
+    }
+
+    /**
+     * Posts synchronization data of one player. The data is taken from the request body as raw bytes,
+     * so no URL-decoding or String conversion is needed.
+     * 
+     * @param request The request with the synchronization data as its body, prefixed with its length (int, big-endian).
+     * @param firebaseID The player thats posting their data.
+     * @param roomID ID of the corresponding {@code GameState}.
+     * @return A JSON-String Status message.
+     */
+    public Result PostPlayerDataBinary(Http.Request request, String firebaseID, int roomID) {
+        //logger..
+
+        return Execute(new ITryCatchExecution() {
+            public Result Try() throws Exception {
+                GameStateCache.getGameInstance(roomID).postPlayerData(firebaseID, payload(request));
                 return JsonFactory.toJson();
             }
         });
@@ -478,7 +627,47 @@ public class HomeController extends Controller {
 
         return Execute(new ITryCatchExecution() {
             public Result Try() throws Exception {
-                return JsonFactory.toJson(GameStateCache.getGameInstance(roomID).getPlayerData(playerIndex));
+                return JsonFactory.toJson(new String(GameStateCache.getGameInstance(roomID).getPlayerData(playerIndex), StandardCharsets.UTF_8));
+            }
+        });
+    }
+
+    /**
+     * Retrieves a specific player's synchronization data as raw bytes.
+     * 
+     * @param roomID ID of the corresponding {@code GameState}.
+     * @param playerIndex Index of the player with the required sync data.
+     * @return The unaltered sync data as a length-prefixed payload in {@code application/octet-stream}.
+     */
+    public Result GetPlayerDataBinary(int roomID, int playerIndex) {
+        //logger..
+
+        return Execute(new ITryCatchExecution() {
+            public Result Try() throws Exception {
+                return JsonFactory.toPayload(GameStateCache.getGameInstance(roomID).getPlayerData(playerIndex));
+            }
+        });
+    }
+
+    /**
+     * Retrieves the latest frame the {@code TickBroadcaster} published for a running game.
+     * The frame contains the synchronization data of all players, see {@code GameState.playerDataFrame}.
+     * 
+     * @param roomID ID of the corresponding {@code GameState}.
+     * @return The latest frame as {@code application/octet-stream}.
+     */
+    public Result GetFrame(int roomID) {
+        //logger..
+
+        return Execute(new ITryCatchExecution() {
+            public Result Try() throws Exception {
+                byte[] frame;
+
+                if((frame = TickBroadcaster.latestFrame(roomID)) == null)
+                    throw new GameStateException("There is no running tick loop for room "+roomID+".");
+                //
+
+                return JsonFactory.toBinary(frame);
             }
         });
     }
@@ -493,7 +682,7 @@ public class HomeController extends Controller {
      * @return
      */ 
      public Result PostResult(String firebaseID, int roomID, String result) {
-        Logger.Log(Tags.CLL, "called /game/postResult",firebaseID,String.valueOf(roomID),result); 
+        Logger.Log(Tags.CLL, "called /game/postResult",firebaseID,roomID,result); 
 
         return Execute(new ITryCatchExecution() {
            public Result Try() throws Exception {
@@ -506,49 +695,80 @@ public class HomeController extends Controller {
     /**
      * 
      * 
+     * @param request The request of the client. {@code Accept: application/cbor} selects a CBOR response.
      * @param firebaseID
      * @param roomID
      * @return
      */
-    public Result Changed(String firebaseID, int roomID) {
-        Logger.Log(Tags.CLL,"called /ingame/hasChanged",firebaseID,String.valueOf(roomID));
+    public Result Changed(Http.Request request, String firebaseID, int roomID) {
+        Logger.Log(Tags.CLL,"called /ingame/hasChanged",firebaseID,roomID);
 
-        return Execute(new ITryCatchExecution() {
+        return Execute(request, new ITryCatchExecution() {
             public Result Try() throws Exception  {
                 return JsonFactory.toJson(GameStateCache.getGameInstance(roomID).hasChanged(firebaseID));
             }
         });
     }
 
-    public Result AllPlayerStates(int roomID) {
-        Logger.Log(Tags.CLL,"called /ingame/playerStates",String.valueOf(roomID));
+    /**
+     * Retrieves all events of a game after the specified offset in one call. Clients pass the NEXT value of the previous response
+     * to get only new events, or 0 after a reconnect to replay all events that are still kept.
+     * A cursor of an earlier game in the room is treated like 0, so a new game is never hidden behind an old cursor.
+     * 
+     * @param request The request of the client. {@code Accept: application/cbor} selects a CBOR response.
+     * @param roomID ID of the corresponding {@code GameState}.
+     * @param offset The offset of the last event the client saw.
+     * @return JSON-String containing the events and the offset for the next call.
+     */
+    public Result Events(Http.Request request, int roomID, long offset) {
+        //logger..
         
-        return Execute(new ITryCatchExecution() {
+        return Execute(request, new ITryCatchExecution() {
             public Result Try() throws Exception {
-                return JsonFactory.toJson(GameStateCache.getGameInstance(roomID).askPlayerStates());
+                GameState game = GameStateCache.getGameInstance(roomID);
+                long cursor = game.eventCursor(offset);
+
+                return JsonFactory.toJson(game.eventsAfter(cursor), cursor);
+            }
+        });
+    }
+
+    public Result AllPlayerStates(Http.Request request, int roomID) {
+        Logger.Log(Tags.CLL,"called /ingame/playerStates",roomID);
+        
+        return Execute(request, new ITryCatchExecution() {
+            public Result Try() throws Exception {
+                GameState game = GameStateCache.getGameInstance(roomID);
+
+                return JsonFactory.conditional(JsonFactory.etag(game.versionTag()), request, () -> JsonFactory.toJson(game.askPlayerStates()));
             }
         });
     }
 
     /**
+     * Retrieves the results of the current minigame. The response carries an ETag;
+     * if the game did not change since, the client gets an empty 304 response.
      * 
-     * 
+     * @param request The request of the client. {@code Accept: application/cbor} selects a CBOR response.
      * @param firebaseID
      * @param roomID
      * @return
      */ 
-    public Result GetResults(int roomID) {
-        Logger.Log(Tags.CLL,"called /ingame/allResults",String.valueOf(roomID));
+    public Result GetResults(Http.Request request, int roomID) {
+        Logger.Log(Tags.CLL,"called /ingame/allResults",roomID);
 
-        return Execute(new ITryCatchExecution(){
+        return Execute(request, new ITryCatchExecution(){
             public Result Try() throws Exception  {
-                return JsonFactory.toJson(GameStateCache.getGameInstance(roomID).getResults());
+                GameState game = GameStateCache.getGameInstance(roomID);
+                game.getResults(); //initializes the results first, so the version tag already covers them
+
+                return JsonFactory.conditional(JsonFactory.etag(game.versionTag()), request, () -> JsonFactory.toJson(game.getResults()));
             }
         });
     }    
 
     public Result PostReady(String firebaseID, int roomID) {
-        Logger.Log(Tags.CLL,"called /ingame/ready",firebaseID,String.valueOf(roomID));
+        Logger.Log(Tags.CLL,"called /ingame/ready",firebaseID,roomID);
 
         return Execute(new ITryCatchExecution() {
             public Result Try() throws Exception {
@@ -571,9 +791,9 @@ public class HomeController extends Controller {
      * @return
      */
     public Result SetMinigame(String firebaseID, int roomID, int minigameID, int sociality, String initValues) {
-        Logger.Log(Tags.CLL,"called /ingame/setGame",
-                firebaseID,String.valueOf(roomID),String.valueOf(sociality),
-                String.valueOf(minigameID),"...");
+        if(Logger.isEnabled(Tags.CLL))
+            Logger.Log(Tags.CLL,"called /ingame/setGame",firebaseID,roomID,sociality,minigameID,"...");
+        //
 
         return Execute(new ITryCatchExecution() {
             public Result Try() throws Exception {
@@ -584,17 +804,42 @@ public class HomeController extends Controller {
         });
     }
 
+    /**
+     * Sets the minigame with the initial values taken from the request body as raw bytes.
+     * Unlike {@code SetMinigame}, the initial values are not URL-decoded.
+     * 
+     * @param request The request with the initial values as its body, prefixed with their length (int, big-endian).
+     * @param firebaseID ID of the Gamemaster.
+     * @param roomID ID of the corresponding {@code GameState}.
+     * @param minigameID ID of the chosen minigame.
+     * @param sociality The sociality the GM calculated.
+     * @return A JSON-String Status message.
+     */
+    public Result SetMinigameBinary(Http.Request request, String firebaseID, int roomID, int minigameID, int sociality) {
+        if(Logger.isEnabled(Tags.CLL))
+            Logger.Log(Tags.CLL,"called /ingame/setGame/binary",firebaseID,roomID,sociality,minigameID,"...");
+        //
+
+        return Execute(new ITryCatchExecution() {
+            public Result Try() throws Exception {
+                GameStateCache.getGameInstance(roomID).setMinigame(firebaseID, minigameID, sociality, payload(request));
+                return JsonFactory.toJson();
+            }
+        });
+    }
+
     /**
      * 
      * 
+     * @param request The request of the client. {@code Accept: application/cbor} selects a CBOR response.
      * @param roomID
      * @param state
      * @return
      */
-    public Result PlayersInState(int roomID, String state) {
-        Logger.Log(Tags.CLL,"called /ingame/playersInState",String.valueOf(roomID),state);
+    public Result PlayersInState(Http.Request request, int roomID, String state) {
+        Logger.Log(Tags.CLL,"called /ingame/playersInState",roomID,state);
 
-        return Execute(new ITryCatchExecution() {
+        return Execute(request, new ITryCatchExecution() {
             public Result Try() throws Exception {
                 return JsonFactory.toJson(GameStateCache.getGameInstance(roomID).areInState(state));
             }
@@ -609,7 +854,7 @@ public class HomeController extends Controller {
      * @return
      */
     public Result NextRound(String firebaseID, int roomID) {
-        Logger.Log(Tags.CLL,"called /ingame/nextRound",firebaseID,String.valueOf(roomID));
+        Logger.Log(Tags.CLL,"called /ingame/nextRound",firebaseID,roomID);
 
         return Execute(new ITryCatchExecution() {
             public Result Try() throws Exception{
@@ -627,7 +872,7 @@ public class HomeController extends Controller {
      * @return
      */
     public Result GameOver(String firebaseID, int roomID) {
-        Logger.Log(Tags.CLL,"called /ingame/gameOver",firebaseID,String.valueOf(roomID));
+        Logger.Log(Tags.CLL,"called /ingame/gameOver",firebaseID,roomID);
 
         return Execute(new ITryCatchExecution() {
             public Result Try() throws Exception {
@@ -650,9 +895,9 @@ public class HomeController extends Controller {
 
     /* DEBUG */
 
-    public Result ReserveCheatedRoom(String firebaseID, int maxPlayers) {
+    public CompletionStage<Result> ReserveCheatedRoom(String firebaseID, int maxPlayers) {
 
-        return Execute(new ITryCatchExecution() {
+        return ExecuteAsync(new ITryCatchExecution() {
             public Result Try() throws Exception {
                 return JsonFactory.toJson(GameRoom.requestGameRoom(firebaseID, maxPlayers,true));
             }
@@ -661,13 +906,12 @@ public class HomeController extends Controller {
 
 
 
-    public Result FlushRoom(int roomID) {
-        Logger.Log(Tags.INF,"Flushing room"+roomID);
+    public CompletionStage<Result> FlushRoom(int roomID) {
+        Logger.Logf(Tags.INF,"Flushing room {}",roomID);
 
-        return Execute(new ITryCatchExecution(){
+        return ExecuteAsync(new ITryCatchExecution(){
             public Result Try() throws Exception {
                 GameRoom.ForceFlush(roomID);
-                GameStateCache.unoccupyRoom(roomID);
         
                 return JsonFactory.toJson();        
             }
@@ -689,22 +933,211 @@ public class HomeController extends Controller {
 
 
 
+    /**
+     * Exports the metrics of the server in the Prometheus text format: requests, errors and latencies per API-call,
+     * latencies of all Database operations, occupied rooms, running games by {@code State} and the sizes of the caches.
+     * 
+     * @return The metrics as plain text.
+     */
+    public Result GetMetrics() {
+        return JsonFactory.toText(Metrics.export());
+    }
+
+    /**
+     * Prints the last traced API-calls with the duration of every step, like the user verification, the room lookup,
+     * each Database transaction and the JSON build. Only a sampled share of all API-calls is traced.
+     * 
+     * @return The traces as plain text.
+     */
+    public Result Traces() {
+        return JsonFactory.toText(Tracer.dump());
+    }
+
+    /**
+     * Sets the share of API-calls that is traced. Only for administrators: the request needs the header {@code X-Admin-Key}
+     * with the key set in the system property {@code admin.key}. Without that property, the share can only be set at startup with {@code trace.sampleRate}.
+     * 
+     * @param request The request of the administrator.
+     * @param sampleRate The new share of API-calls that is traced, between 0 and 1.
+     * @return The new share as plain text, or 403 if the request is not from an administrator.
+     */
+    public Result SetTraceSampleRate(Http.Request request, double sampleRate) {
+        if(!isAdmin(request))
+            return Results.forbidden("Only administrators can change the sample rate.");
+        //
+
+        Tracer.setSampleRate(sampleRate);
+        Logger.Logf(Tags.INF,"Trace sample rate set to {}",sampleRate);
+
+        return JsonFactory.toText("sample rate " + sampleRate);
+    }
+
     /* PRIVATE FUNCTIONS */
 
+    /**
+     * This method checks whether a request comes from an administrator, by comparing its {@code X-Admin-Key} header
+     * with the system property {@code admin.key} in constant time.
+     * 
+     * @param request The request.
+     * @return {@code true} if the key is set and matches, and {@code false} otherwise.
+     */
+    private static boolean isAdmin(Http.Request request) {
+        String key = System.getProperty("admin.key");
+        String given = request.header("X-Admin-Key").orElse(null);
+
+        if(key == null || key.isEmpty() || given == null) return false;
+
+        return MessageDigest.isEqual(key.getBytes(StandardCharsets.UTF_8), given.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * This method works like {@code Execute}, but runs the API-call on the {@code DatabaseExecutionContext}.
+     * Used for all API-calls that block on the Database, so they cannot stall the in-memory API-calls.
+     * 
+     * @param t The unique {@code ITryCatchExecution} Interface instance
+     * @return A stage that completes with the Result once the API-call finished.
+     */
+    private CompletionStage<Result> ExecuteAsync(ITryCatchExecution t) {
+        return ExecuteAsync(AdmissionControl.Priority.HIGH, t);
+    }
+
+    /**
+     * This method works like {@code ExecuteAsync}, but the Database transactions of the API-call are admitted with the specified priority.
+     * Used with LOW for API-calls that browse or change profiles, so they give way to the API-calls of rooms and games when the Database is busy.
+     * 
+     * @param priority The priority of the Database transactions of the API-call.
+     * @param t The unique {@code ITryCatchExecution} Interface instance
+     * @return A stage that completes with the Result once the API-call finished.
+     */
+    private CompletionStage<Result> ExecuteAsync(AdmissionControl.Priority priority, ITryCatchExecution t) {
+        //the latency includes the time the API-call waits for a thread
+        long start = System.nanoTime();
+
+        return CompletableFuture.supplyAsync(() -> {
+            AdmissionControl.setPriority(priority);
+            try {
+                return Execute(t, start);
+            } finally {
+                AdmissionControl.setPriority(null);
+            }
+        }, HttpExecution.fromThread(dbContext));
+    }
+
+    /**
+     * This method works like {@code Execute} for API-calls that complete asynchronously without blocking a thread.
+     * Exceptions are caught both while the stage is created and when the stage completes exceptionally.
+     * The trace of the API-call stays open until the stage completes, so the steps that run on other threads are part of it.
+     * 
+     * @param t The unique {@code IAsyncExecution} Interface instance
+     * @return A stage that completes with the Result, or with the status message of the Exception.
+     */
+    private CompletionStage<Result> ExecuteStage(IAsyncExecution t) {
+        RouteMetrics route = RouteMetrics.of(t);
+        long start = System.nanoTime();
+        Tracer.Span trace = Tracer.startTrace(route.getRoute());
+        CompletionStage<Result> stage;
+
+        try {
+            stage = t.Try(trace);
+        } catch (Exception e) {
+            Logger.Log(Tags.ERR,e.getMessage());
+            route.failed(e);
+            route.finished(start);
+            trace.close();
+
+            return CompletableFuture.completedFuture(JsonFactory.toJson(e));
+        }
+
+        trace.detach();
+
+        return stage.exceptionally(e -> {
+            Throwable cause = (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+            Logger.Log(Tags.ERR,cause.getMessage());
+            route.failed(cause);
+
+            return JsonFactory.toJson((cause instanceof Exception) ? (Exception) cause : new Exception(cause));
+        }).whenComplete((result, e) -> {
+            route.finished(start);
+            trace.close();
+        });
+    }
+
+    /**
+     * This method retrieves the payload of a binary in-game API-call from the request body.
+     * The body is the length of the payload (int, big-endian) followed by exactly that many bytes.
+     * The prefix is read from a view of the body and the payload is sliced off without copying, so the payload is copied only once.
+     * 
+     * @param request The request containing the body.
+     * @return The payload as raw bytes.
+     * @throws MalformedPayloadException If the body is shorter than its length prefix, longer, or the prefix is negative.
+     */
+    private static byte[] payload(Http.Request request) throws MalformedPayloadException {
+        ByteString body = request.body().asBytes();
+
+        if(body == null || body.length() < Integer.BYTES)
+            throw new MalformedPayloadException("The body has no length prefix!");
+        //
+
+        int length = body.slice(0, Integer.BYTES).asByteBuffer().getInt();
+        int remaining = body.length() - Integer.BYTES;
+
+        if(length < 0 || length != remaining)
+            throw new MalformedPayloadException("The body holds "+remaining+" bytes, but its length prefix is "+length+"!");
+        //
+
+        return body.slice(Integer.BYTES, body.length()).toArray();
+    }
+
+    /**
+     * This method works like {@code Execute}, but encodes the response in the encoding the client asked for in its Accept header.
+     * Used for the high-frequency in-game API-calls.
+     * 
+     * @param request The request of the client.
+     * @param t The unique {@code ITryCatchExecution} Interface instance
+     * @return The Result of the API-call in the negotiated encoding. It varies with the Accept header, which caches are told with {@code Vary: Accept}.
+     */
+    private Result Execute(Http.Request request, ITryCatchExecution t) {
+        JsonFactory.setEncoding(JsonFactory.Encoding.negotiate(request));
+
+        try {
+
+            return Execute(t).withHeader(Http.HeaderNames.VARY, Http.HeaderNames.ACCEPT);
+        } finally {
+            JsonFactory.setEncoding(null);
+        }
+    }
+
     /**
      * This method serves as a shortcut for implementing a try-catch block that catches logs the error and returns the status message as a result.
+     * The request count, latency and errors of every API-call are recorded in its {@code RouteMetrics}.
      * 
      * @param t The unique {@code ITryCatchExecution} Interface instance
      * @return
      */
     private Result Execute(ITryCatchExecution t) {
-        try {
+        return Execute(t, System.nanoTime());
+    }
+
+    /**
+     * This method works like {@code Execute}, but records the latency from an earlier point in time.
+     * 
+     * @param t The unique {@code ITryCatchExecution} Interface instance
+     * @param start When the API-call started, as returned by {@code System.nanoTime()}.
+     * @return The Result of the API-call.
+     */
+    private Result Execute(ITryCatchExecution t, long start) {
+        RouteMetrics route = RouteMetrics.of(t);
+
+        try (Tracer.Span trace = Tracer.startTrace(route.getRoute())) {
 
             return t.Try();
         } catch (Exception e) {
             Logger.Log(Tags.ERR,e.getMessage());
+            route.failed(e);
 
             return JsonFactory.toJson(e);
+        } finally {
+            route.finished(start);
         }
     }
 
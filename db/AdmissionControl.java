@@ -0,0 +1,250 @@
+package db;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import Exceptions.DatabaseBusyException;
+import models.Metrics;
+
+/**
+ * This purely static class bounds the number of blocking transactions that run against the Database at the same time.
+ * A transaction takes a permit before it runs. If no permit is free, it waits in the queue of its {@code Priority};
+ * HIGH transactions always get the next free permit before LOW ones. Both the queues and the time spent waiting are bounded:
+ * a transaction that finds its queue full or waits too long is rejected with a {@code DatabaseBusyException} that tells the client when to try again.
+ * So a slow Database fails requests early instead of blocking every thread of the server.
+ *
+ * The priority is set per thread by the caller, usually the controller. Permits are reentrant per thread: a thread that already holds one
+ * can run further transactions without queueing again, so a multi-step operation is either rejected up front or admitted completely.
+ * Such an operation takes its locks before the permit, so a thread never holds a permit while it waits in the queue of a lock.
+ * The limits are read from the system properties {@code db.admission.permits}, {@code db.admission.queue.high}, {@code db.admission.queue.low},
+ * {@code db.admission.wait.high} and {@code db.admission.wait.low} (in milliseconds).
+ */
+public class AdmissionControl {
+
+    /**
+     * This enumerator is used to tell in-game transactions apart from less urgent ones like browsing profiles.
+     */
+    public enum Priority {
+        /** Transactions of rooms and running games. Used if the thread did not set a priority. */
+        HIGH,
+        /** Transactions of profiles and friends. */
+        LOW
+    }
+
+    private static final int permits = Integer.getInteger("db.admission.permits", 32); //the number of transactions that run at the same time
+    private static final int[] queueLimits = { Integer.getInteger("db.admission.queue.high", 256), Integer.getInteger("db.admission.queue.low", 64) }; //the queue length per priority
+    private static final long[] maxWait = { Long.getLong("db.admission.wait.high", 1000), Long.getLong("db.admission.wait.low", 250) }; //the longest wait per priority in milliseconds
+
+    private static final ReentrantLock lock = new ReentrantLock(); //guards the permits and queues; not synchronized, so virtual threads are not pinned
+    private static final Condition[] turns = { lock.newCondition(), lock.newCondition() }; //signalled when a permit is free, per priority
+    private static int available = permits; //the number of free permits
+    private static final int[] queued = new int[2]; //the number of waiting transactions per priority
+
+    private static final ThreadLocal<Priority> priority = new ThreadLocal<>(); //the priority of the transactions of the current thread
+    private static final ThreadLocal<long[]> held = ThreadLocal.withInitial(() -> new long[2]); //how often the current thread holds its permit, and since when
+    private static volatile long averageHold = TimeUnit.MILLISECONDS.toNanos(10); //a moving average of how long a permit is held, in nanoseconds
+
+    private static final LongAdder[] rejected = { //the rejected transactions per priority
+        Metrics.counter("db_admission_rejected_total", "Database transactions rejected by the admission control", "priority", "HIGH"),
+        Metrics.counter("db_admission_rejected_total", "Database transactions rejected by the admission control", "priority", "LOW")
+    };
+
+    /**
+     * The Constructor is private because this class does not need an instance.
+     */
+    private AdmissionControl() {};
+
+    /**
+     * This method sets the priority of all transactions the current thread runs from now on.
+     *
+     * @param p The priority. {@code null} resets it to HIGH.
+     */
+    public static void setPriority(Priority p) {
+        if(p == null)
+            priority.remove();
+        else
+            priority.set(p);
+        //
+    }
+
+    /**
+     * This method returns the priority of the transactions of the current thread.
+     *
+     * @return The priority.
+     */
+    public static Priority getPriority() {
+        Priority p = priority.get();
+
+        return (p == null) ? Priority.HIGH : p;
+    }
+
+    /**
+     * This method takes a permit for the current thread and waits for one if necessary. Every call has to be followed by {@code release}.
+     * If the thread already holds a permit, it is taken again without waiting.
+     *
+     * @throws DatabaseBusyException If the queue of the priority is full or no permit got free in time.
+     */
+    public static void acquire() {
+        long[] h = held.get();
+        if(h[0] > 0) {
+            h[0]++;
+            return;
+        }
+
+        Priority p = getPriority();
+        int i = p.ordinal();
+
+        lock.lock();
+        try {
+            if(!admissible(p, false)) {
+                if(queued[i] >= queueLimits[i]) throw rejected(p, "the queue is full");
+
+                long wait = TimeUnit.MILLISECONDS.toNanos(maxWait[i]);
+                queued[i]++;
+
+                try {
+                    while(!admissible(p, true)) {
+                        if(wait <= 0) throw rejected(p, "no connection got free in time");
+
+                        wait = turns[i].awaitNanos(wait);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+
+                    throw rejected(p, "the thread was interrupted");
+                } finally {
+                    queued[i]--;
+                    //a permit that this thread was woken for, but did not take, goes to the next one
+                    if(available > 0) signalNext();
+                }
+            }
+
+            available--;
+        } finally {
+            lock.unlock();
+        }
+
+        h[0] = 1;
+        h[1] = System.nanoTime();
+    }
+
+    /**
+     * This method returns a permit taken with {@code acquire}. The permit is only freed once the thread returned it as often as it took it.
+     */
+    public static void release() {
+        long[] h = held.get();
+        if(--h[0] > 0) return;
+
+        //the average moves an eighth of the way towards every new hold time
+        long hold = System.nanoTime() - h[1];
+        averageHold += (hold - averageHold) >> 3;
+
+        free();
+    }
+
+    /**
+     * This method takes a permit without waiting, for transactions that do not block a thread. The permit is not bound to the thread,
+     * so it has to be returned with {@code releaseAsync}, which can be called from any thread.
+     *
+     * @return {@code true} if a permit was taken, {@code false} if the transaction is rejected.
+     */
+    public static boolean tryAcquire() {
+        Priority p = getPriority();
+
+        lock.lock();
+        try {
+            if(!admissible(p, false)) {
+                rejected[p.ordinal()].increment();
+
+                return false;
+            }
+
+            available--;
+
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * This method returns a permit taken with {@code tryAcquire}.
+     */
+    public static void releaseAsync() {
+        free();
+    }
+
+    /**
+     * This method estimates how long a rejected client should wait before it tries again: the time it takes to work off the current queues.
+     *
+     * @return The number of seconds, at least 1.
+     */
+    public static int retryAfter() {
+        long waiting = queued[0] + queued[1] + 1;
+
+        return (int) Math.max(1, (long) Math.ceil(waiting * averageHold / (double) permits / 1e9));
+    }
+
+    /**
+     * This method returns the number of transactions waiting for a permit. Used for metrics; the number is not exact while transactions change.
+     *
+     * @param p The priority.
+     * @return The number of waiting transactions.
+     */
+    public static int queued(Priority p) {
+        return queued[p.ordinal()];
+    }
+
+    /**
+     * This method returns the number of permits that are held. Used for metrics; the number is not exact while transactions change.
+     *
+     * @return The number of held permits.
+     */
+    public static int inUse() {
+        return permits - available;
+    }
+
+    /* PRIVATE FUNCTIONS */
+
+    /**
+     * This method checks whether a transaction can take a permit now. The caller holds the lock.
+     * A new transaction must not overtake a waiting one of the same or a higher priority.
+     *
+     * @param p The priority of the transaction.
+     * @param waiting Whether the transaction is already waiting in its queue.
+     * @return {@code true} if the transaction can take a permit.
+     */
+    private static boolean admissible(Priority p, boolean waiting) {
+        if(available <= 0) return false;
+        if(p == Priority.HIGH) return waiting || queued[Priority.HIGH.ordinal()] == 0;
+
+        return queued[Priority.HIGH.ordinal()] == 0 && (waiting || queued[Priority.LOW.ordinal()] == 0);
+    }
+
+    private static void free() {
+        lock.lock();
+        try {
+            available++;
+            signalNext();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void signalNext() {
+        if(queued[Priority.HIGH.ordinal()] > 0)
+            turns[Priority.HIGH.ordinal()].signal();
+        else if(queued[Priority.LOW.ordinal()] > 0)
+            turns[Priority.LOW.ordinal()].signal();
+        //
+    }
+
+    private static DatabaseBusyException rejected(Priority p, String reason) {
+        rejected[p.ordinal()].increment();
+
+        return new DatabaseBusyException("The Database is busy, " + reason + ". Try again later.", retryAfter());
+    }
+
+}
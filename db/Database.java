@@ -1,31 +1,58 @@
 package db;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
-
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
 import com.mongodb.client.*;
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckOutStartedEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionPoolListener;
 import org.bson.Document;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
 
+import Exceptions.DatabaseBusyException;
 import interfaces.*;
+import models.FlightEvents;
+import models.LatencyHistogram;
 import models.Logger;
 import models.Logger.Tags;
+import models.Metrics;
+import models.Tracer;
 
 /**
  * This class represents the interface between the Backend Database and the API. 
  * This is the Baseclass for all Databases, taking a generic parameter to define what type of Database is to implemented.
  * The Database class should only be handled as a Singleton.
+ * The MongoDB instance and the database are read once from the system properties {@code db.uri} and {@code db.name},
+ * so tests and load generators can point the server at a throwaway instance.
  * 
  * @param <T> The Type of Data the Database stores. T needs to implement the Interface {@code IDocumentable<T>}.
  * 
  */
 public abstract class Database<T extends IDocumentCoder<T>> {
 
-    private static final String uri = "mongodb://127.0.0.1:28000/?connectTimeoutMS=5000"; //the uri used to connect to a mongodb instance, includes a timeout
-    private static final String db = "test"; //the string of the database
+    private static final String uri = System.getProperty("db.uri", "mongodb://127.0.0.1:28000/?connectTimeoutMS=5000"); //the uri used to connect to a mongodb instance, includes a timeout; set with db.uri
+    private static final String db = System.getProperty("db.name", "test"); //the string of the database; set with db.name
     protected String collection; //the name of the collection, specified by each database
     
-    private MongoClient client; //the mongoclient to open a connection with
-    protected MongoCollection<Document> mdbCollection; //the protected MongoCollection instance for subclasses to use
+    private static volatile MongoClient client; //the mongoclient shared by all databases; it is thread-safe and pools its connections
+    private static final ReentrantLock clientLock = new ReentrantLock(); //guards the creation of the client; not synchronized, so virtual threads are not pinned
+    protected volatile MongoCollection<Document> mdbCollection; //the protected MongoCollection instance for subclasses to use
+
+    private static volatile com.mongodb.reactivestreams.client.MongoClient asyncClient; //the non-blocking mongoclient shared by all databases
+    private volatile com.mongodb.reactivestreams.client.MongoCollection<Document> asyncCollection; //the non-blocking counterpart of mdbCollection
+
+    private final ConcurrentHashMap<String,LatencyHistogram> latencies = new ConcurrentHashMap<>(); //the latency histograms of this collection by operation
     
     /**
      * This method retrieves all objects that match the Key:Value pair specified by the method parameters.
@@ -35,11 +62,11 @@ public abstract class Database<T extends IDocumentCoder<T>> {
      * @return Returns a list of {@code Document} that match the search criteria. If no element was found, returns an empty list.
      */
     protected List<Document> findByValue(String key, String value) {
-        Logger.Log(Tags.CLL,"Called findByValue with "+key+":"+value);
+        Logger.Logf(Tags.CLL,"Called findByValue with {}:{}",key,value);
         
         List<Document> list = new ArrayList<Document>();
 
-       transaction(new ITransaction(){
+       transaction("find", new ITransaction(){
         
             @Override
             public void commit() {
@@ -55,6 +82,41 @@ public abstract class Database<T extends IDocumentCoder<T>> {
         return list;
     }
 
+    /**
+     * This method retrieves all objects whose key matches any of the specified values in a single query.
+     * Only the specified fields (and {@code _id}) of the objects are retrieved.
+     * 
+     * @param key The Key that is matched.
+     * @param values The Values for the Key.
+     * @param fields The fields that are retrieved.
+     * @return Returns a list of {@code Document} that match the search criteria. If no element was found, returns an empty list.
+     */
+    protected List<Document> findAnyOf(String key, Collection<String> values, String... fields) {
+        Logger.Logf(Tags.CLL,"Called findAnyOf with {} for {} values",key,values.size());
+
+        List<Document> list = new ArrayList<Document>();
+        if(values.isEmpty()) return list;
+
+        Document projection = new Document();
+        for(String f : fields)
+            projection.append(f, 1);
+        //
+
+        int i = transaction("find", new ITransaction(){
+        
+            @Override
+            public void commit() {
+                mdbCollection.find(new Document(key, new Document("$in", new ArrayList<>(values))))
+                    .projection(projection)
+                    .forEach(s -> list.add(s));
+            }
+        });
+
+        statusLog(i, "find");
+
+        return list;
+    }
+
     /**
      * This method takes an Object and updates it. If the object could not be found in the database, nothing is done.
      * This method returns 0 if the update was successful, and 1 otherwise.
@@ -63,9 +125,9 @@ public abstract class Database<T extends IDocumentCoder<T>> {
      * @return A status code.
      */
     public int update(T object) {
-        Logger.Log(Tags.CLL,"Called update on collection "+collection);
+        Logger.Logf(Tags.CLL,"Called update on collection {}",collection);
 
-        int i = transaction(new ITransaction(){
+        int i = transaction("update", new ITransaction(){
         
             @Override
             public void commit() {
@@ -85,9 +147,9 @@ public abstract class Database<T extends IDocumentCoder<T>> {
      * @return A status code.
      */
     public int insert(T item) {
-        Logger.Log(Tags.CLL,"Called insert on collection "+collection);
+        Logger.Logf(Tags.CLL,"Called insert on collection {}",collection);
         
-        int i = transaction(new ITransaction(){
+        int i = transaction("insert", new ITransaction(){
         
             @Override
             public void commit() {
@@ -111,9 +173,9 @@ public abstract class Database<T extends IDocumentCoder<T>> {
      * @return The status code.
      */
     protected int remove(String key, String value) {
-        Logger.Log(Tags.CLL,"Called remove on collection "+collection+" with "+key+":"+value);
+        Logger.Logf(Tags.CLL,"Called remove on collection {} with {}:{}",collection,key,value);
 
-        int i = transaction(new ITransaction(){
+        int i = transaction("remove", new ITransaction(){
         
             @Override
             public void commit() {
@@ -134,43 +196,372 @@ public abstract class Database<T extends IDocumentCoder<T>> {
      * @return Returns {@code true} if an object exists and {@code false} otherwise.
      */
     protected boolean exists(String key, String value) {
-        Logger.Log(Tags.INF,"Looking up if objects match "+key+":"+value);
+        return count(key, value) > 0;
+    }
 
-        int i = transaction(new ITransaction(){
+    /**
+     * This method counts the objects matching the specified Key:Value pair. Unlike {@code exists}, it tells a miss apart from a failed transaction.
+     * 
+     * @param key The key of the value.
+     * @param value The value to the corresponding key.
+     * @return The number of matching objects, or -1 if the transaction failed.
+     */
+    protected long count(String key, String value) {
+        Logger.Logf(Tags.INF,"Looking up if objects match {}:{}",key,value);
+
+        long[] count = {-1};
+
+        transaction("exists", new ITransaction(){
         
             @Override
             public void commit() throws Exception {
-                if((mdbCollection.countDocuments(new Document(key,value)) == 0))
-                 throw new Exception("Element containing "+key+":"+value+" in collection "+collection+" could not be found.");
+                count[0] = mdbCollection.countDocuments(new Document(key,value));
+            }
+        });
+
+        return count[0];
+    }
+
+    /* ASYNCHRONOUS API */
+
+    /**
+     * This method is the non-blocking counterpart of {@code findByValue}. No thread is held while the Database is queried.
+     * 
+     * @param key The Key of the pair
+     * @param value The Value for the Key
+     * @return A stage that completes with a list of {@code Document} that match the search criteria. If no element was found, the list is empty.
+     *         It completes exceptionally with a {@code DatabaseBusyException} if the lookup was not admitted.
+     */
+    protected CompletionStage<List<Document>> findAsync(String key, String value) {
+        Logger.Logf(Tags.CLL,"Called findAsync with {}:{}",key,value);
+
+        CompletionStage<List<Document>> stage = transactionAsync("find", new IAsyncTransaction<Document>() {
+
+            @Override
+            public Publisher<Document> commit(com.mongodb.reactivestreams.client.MongoCollection<Document> collection) {
+                return collection.find(new Document(key,value));
             }
         });
 
-        return (i == 0) ? true : false;
+        return stage.handle((list, e) -> {
+            rethrowBusy(e);
+            statusLog((e != null || list.isEmpty()) ? 1 : 0, "find");
+
+            return (e != null) ? new ArrayList<Document>() : list;
+        });
+    }
+
+    /**
+     * This method is the non-blocking counterpart of {@code update}.
+     * 
+     * @param object The object that gets updated.
+     * @return A stage that completes with the status code: 0 if the update was successful, and 1 otherwise.
+     */
+    public CompletionStage<Integer> updateAsync(T object) {
+        Logger.Logf(Tags.CLL,"Called updateAsync on collection {}",collection);
+
+        return status(transactionAsync("update", new IAsyncTransaction<Document>() {
+
+            @Override
+            public Publisher<Document> commit(com.mongodb.reactivestreams.client.MongoCollection<Document> collection) {
+                return collection.findOneAndReplace(new Document("_id",object.unique()), object.encode());
+            }
+        }), "update");
+    }
+
+    /**
+     * This method is the non-blocking counterpart of {@code insert}.
+     * 
+     * @param item The item that is to be inserted.
+     * @return A stage that completes with the status code: 0 if the insert was successful, and 1 otherwise.
+     */
+    public CompletionStage<Integer> insertAsync(T item) {
+        Logger.Logf(Tags.CLL,"Called insertAsync on collection {}",collection);
+
+        return status(transactionAsync("insert", new IAsyncTransaction<Object>() {
+
+            @Override
+            public Publisher<Object> commit(com.mongodb.reactivestreams.client.MongoCollection<Document> collection) {
+                return collection.insertOne(item.encode());
+            }
+        }), "insert");
+    }
+
+    /**
+     * This method is the non-blocking counterpart of {@code count}. Like {@code count}, it tells a miss apart from a failed transaction.
+     * 
+     * @param key The key of the value.
+     * @param value The value to the corresponding key.
+     * @return A stage that completes with the number of matching objects, or with -1 if the transaction failed.
+     *         It completes exceptionally with a {@code DatabaseBusyException} if the lookup was not admitted.
+     */
+    protected CompletionStage<Long> countAsync(String key, String value) {
+        Logger.Logf(Tags.INF,"Looking up asynchronously if objects match {}:{}",key,value);
+
+        CompletionStage<List<Long>> stage = transactionAsync("exists", new IAsyncTransaction<Long>() {
+
+            @Override
+            public Publisher<Long> commit(com.mongodb.reactivestreams.client.MongoCollection<Document> collection) {
+                return collection.countDocuments(new Document(key,value));
+            }
+        });
+
+        return stage.handle((counts, e) -> {
+            rethrowBusy(e);
+            if(e != null) Logger.Log(Tags.ERR,e.getMessage());
+
+            return (e != null) ? -1L : (counts.isEmpty() ? 0L : counts.get(0));
+        });
+    }
+
+    /**
+     * This method handles all non-blocking transactions to the MongoDB database. It subscribes to the transaction's {@code Publisher}
+     * and collects all emitted items. The latency until the transaction completes is recorded like in {@code transaction}.
+     * The transaction holds a permit of the {@code AdmissionControl} until it completes. It does not wait for one:
+     * if none is free, the stage fails right away with a {@code DatabaseBusyException}.
+     * 
+     * @param operation The operation that is recorded, one of find, update, insert, remove and exists.
+     * @param transaction A {@code IAsyncTransaction} instance that builds the MongoDB CRUD-operation.
+     * @return A stage that completes with all emitted items, or exceptionally if the transaction failed or was not admitted.
+     */
+    protected <R> CompletionStage<List<R>> transactionAsync(String operation, IAsyncTransaction<R> transaction) {
+        CollectingSubscriber<R> subscriber = new CollectingSubscriber<>();
+
+        if(!AdmissionControl.tryAcquire()) {
+            subscriber.result.completeExceptionally(new DatabaseBusyException("The Database is busy. Try again later.", AdmissionControl.retryAfter()));
+
+            return subscriber.result;
+        }
+
+        long start = System.nanoTime();
+
+        subscriber.result.whenComplete((items, e) -> {
+            AdmissionControl.releaseAsync();
+            latency(operation).recordSince(start);
+            if(e != null) errors(operation).increment();
+        });
+
+        try {
+            if(asyncCollection == null)
+                asyncCollection = asyncClient().getDatabase(db).getCollection(collection);
+            //
+
+            transaction.commit(asyncCollection).subscribe(subscriber);
+        } catch (Exception e) {
+            subscriber.onError(e);
+        }
+
+        return subscriber.result;
     }
 
+    /**
+     * This {@code Subscriber} requests all items of a {@code Publisher} and completes a future once the {@code Publisher} is done.
+     * 
+     * @param <R> The type of the items.
+     */
+    private static class CollectingSubscriber<R> implements Subscriber<R> {
+        private final CompletableFuture<List<R>> result = new CompletableFuture<>();
+        private final List<R> items = new ArrayList<>();
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            s.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(R item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            result.completeExceptionally(t);
+        }
+
+        @Override
+        public void onComplete() {
+            result.complete(items);
+        }
+    }
+
+    /**
+     * This method maps the outcome of a non-blocking transaction to a status code and logs it.
+     * A transaction that was not admitted is not a failed one; like in {@code transaction}, its {@code DatabaseBusyException} is passed on.
+     * 
+     * @param stage The stage of the transaction.
+     * @param operation An operation specifier.
+     * @return A stage that completes with 0 if the transaction was successful, and 1 otherwise.
+     */
+    private CompletionStage<Integer> status(CompletionStage<?> stage, String operation) {
+        return stage.handle((items, e) -> {
+            rethrowBusy(e);
+            if(e != null) Logger.Log(Tags.ERR,e.getMessage());
+
+            int i = (e == null) ? 0 : 1;
+            statusLog(i, operation);
+
+            return i;
+        });
+    }
+
+    /**
+     * This method passes on the {@code DatabaseBusyException} of a transaction that was not admitted, so the non-blocking calls
+     * do not turn it into a failure or an empty result.
+     * 
+     * @param e The Exception the transaction completed with, or {@code null}.
+     */
+    private static void rethrowBusy(Throwable e) {
+        Throwable cause = (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+
+        if(cause instanceof DatabaseBusyException)
+            throw (cause == e) ? new CompletionException(cause) : (CompletionException) e;
+        //
+    }
+
+    /**
+     * This method returns the shared non-blocking {@code MongoClient} and creates it on first use.
+     * 
+     * @return The shared non-blocking {@code MongoClient}.
+     */
+    private static com.mongodb.reactivestreams.client.MongoClient asyncClient() {
+        com.mongodb.reactivestreams.client.MongoClient c;
+
+        if((c = asyncClient) == null) {
+            clientLock.lock();
+            try {
+                if((c = asyncClient) == null)
+                    asyncClient = c = com.mongodb.reactivestreams.client.MongoClients.create(uri);
+                //
+            } finally {
+                clientLock.unlock();
+            }
+        }
+
+        return c;
+    }
+
+    /* BLOCKING TRANSACTIONS */
+
     /**
      * This method handles all transactions to the MongoDB database. Returns 0 if transaction was successful, and 1 otherwise.
+     * The latency of every transaction is recorded per collection and operation, and failed transactions are counted.
+     * Every transaction holds a permit of the {@code AdmissionControl} while it runs. A rejected transaction is not a failed one:
+     * its {@code DatabaseBusyException} is passed on to the API-call instead of being turned into a status code.
      * 
+     * @param operation The operation that is recorded, one of find, update, insert, remove and exists.
      * @param transaction A {@code ITransaction} instance that contains code that deals with MongoDB CRUD-operations.
      * @return The status code.
+     * @throws DatabaseBusyException If the transaction was not admitted.
      */
-    private int transaction(ITransaction transaction) {
-        try {
-            client = MongoClients.create(uri);
-            mdbCollection = client.getDatabase(db).getCollection(collection);
+    private int transaction(String operation, ITransaction transaction) {
+        AdmissionControl.acquire();
+
+        long start = System.nanoTime();
+        FlightEvents.DatabaseTransaction event = new FlightEvents.DatabaseTransaction();
+        event.begin();
+
+        try (Tracer.Span span = Tracer.span("Database", operation, collection)) {
+            if(mdbCollection == null)
+                mdbCollection = client().getDatabase(db).getCollection(collection);
+            //
             
             Logger.Log(Tags.INF,"Starting Transaction...");
             transaction.commit();
             Logger.Log(Tags.SCS,"Transaction finished.");
+            event.successful = true;
     
             return 0;
         } catch (Exception e) {
             Logger.Log(Tags.ERR,e.getMessage());
+            errors(operation).increment();
 
             return 1;
         } finally {
+            AdmissionControl.release();
+            latency(operation).recordSince(start);
+
+            event.collection = collection;
+            event.operation = operation;
+            event.commit();
+        }
+    }
+
+    /**
+     * This method returns the latency histogram of an operation on this collection.
+     * 
+     * @param operation The operation.
+     * @return The histogram.
+     */
+    private LatencyHistogram latency(String operation) {
+        return latencies.computeIfAbsent(operation, op -> Metrics.histogram("mongo_operation_seconds",
+            "Latency of Database operations", "collection", collection, "operation", op));
+    }
+
+    /**
+     * This method returns the counter of failed transactions of an operation on this collection.
+     * 
+     * @param operation The operation.
+     * @return The counter.
+     */
+    private LongAdder errors(String operation) {
+        return Metrics.counter("mongo_operation_errors_total", "Failed Database operations", "collection", collection, "operation", operation);
+    }
+
+    /**
+     * This method returns the shared {@code MongoClient} and creates it on first use.
+     * A single client is used for all transactions, as it is thread-safe and keeps a pool of connections.
+     * 
+     * @return The shared {@code MongoClient}.
+     */
+    private static MongoClient client() {
+        MongoClient c;
+
+        if((c = client) == null) {
+            clientLock.lock();
+            try {
+                if((c = client) == null)
+                    client = c = MongoClients.create(MongoClientSettings.builder()
+                        .applyConnectionString(new ConnectionString(uri))
+                        .applyToConnectionPoolSettings(pool -> pool.addConnectionPoolListener(new PoolWaitListener()))
+                        .build());
+                //
+            } finally {
+                clientLock.unlock();
+            }
+        }
+
+        return c;
+    }
+
+    /**
+     * This {@code ConnectionPoolListener} records how long transactions wait for a connection from the pool of the blocking client.
+     * The blocking client checks a connection out on the thread that runs the transaction, so the start of the wait is kept per thread.
+     */
+    private static class PoolWaitListener implements ConnectionPoolListener {
+        private final ThreadLocal<Long> started = new ThreadLocal<>(); //the start of the wait of the current thread
+        private final LatencyHistogram waits = Metrics.histogram("mongo_pool_wait_seconds", "Time spent waiting for a pooled Database connection");
+
+        @Override
+        public void connectionCheckOutStarted(ConnectionCheckOutStartedEvent event) {
+            started.set(System.nanoTime());
+        }
+
+        @Override
+        public void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+            finished();
+        }
+
+        @Override
+        public void connectionCheckOutFailed(ConnectionCheckOutFailedEvent event) {
+            finished();
+        }
+
+        private void finished() {
+            Long start = started.get();
+            if(start == null) return;
 
-            client.close();
+            started.remove();
+            waits.recordSince(start);
         }
     }
 
@@ -190,9 +581,9 @@ public abstract class Database<T extends IDocumentCoder<T>> {
      */
     private void statusLog(int i, String operation) {
         if(i!=0)
-            Logger.Log(Tags.ERR,operation+" failed!");
+            Logger.Logf(Tags.ERR,"{} failed!",operation);
         else
-            Logger.Log(Tags.SCS,operation+" successful!");
+            Logger.Logf(Tags.SCS,"{} successful!",operation);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,76 @@
+package db;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.inject.Inject;
+
+import akka.actor.ActorSystem;
+import com.typesafe.config.Config;
+import models.Logger;
+import models.Logger.Tags;
+import play.libs.concurrent.CustomExecutionContext;
+
+/**
+ * This class is the execution context for all API-calls that block on the Database.
+ * It runs on its own dispatcher, so a slow Database only stalls the threads of this pool and not Play's default dispatcher,
+ * which keeps serving the purely in-memory API-calls.
+ * The pool is configured in application.conf, for example:
+ * <pre>
+ * database.dispatcher {
+ *   executor = "thread-pool-executor"
+ *   throughput = 1
+ *   thread-pool-executor.fixed-pool-size = 32
+ * }
+ * database.virtualThreads = false
+ * </pre>
+ * If {@code database.virtualThreads} is set and the runtime supports virtual threads (Java 21 and later),
+ * every API-call runs on its own virtual thread instead of the bounded pool. Otherwise the setting is ignored.
+ */
+public class DatabaseExecutionContext extends CustomExecutionContext {
+
+    private final ExecutorService virtualThreads; //the virtual thread executor; null if the bounded pool is used
+
+    /**
+     * Creates the execution context from the {@code database.dispatcher} configuration.
+     *
+     * @param actorSystem The actor system of the application.
+     * @param config The configuration of the application.
+     */
+    @Inject
+    public DatabaseExecutionContext(ActorSystem actorSystem, Config config) {
+        super(actorSystem, "database.dispatcher");
+
+        boolean virtual = config.hasPath("database.virtualThreads") && config.getBoolean("database.virtualThreads");
+        virtualThreads = virtual ? createVirtualThreadExecutor() : null;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if(virtualThreads != null)
+            virtualThreads.execute(command);
+        else
+            super.execute(command);
+        //
+    }
+
+    /**
+     * This method creates an executor that starts a new virtual thread per task.
+     * The executor is looked up reflectively, so the application still runs on runtimes without virtual threads.
+     *
+     * @return The executor, or {@code null} if the runtime does not support virtual threads.
+     */
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            Logger.Log(Tags.INF,"Running Database calls on virtual threads.");
+
+            return executor;
+        } catch (ReflectiveOperationException e) {
+            Logger.Log(Tags.ERR,"Virtual threads are not supported by this runtime. Using the database dispatcher instead.");
+
+            return null;
+        }
+    }
+
+}
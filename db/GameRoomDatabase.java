@@ -4,6 +4,9 @@ import models.GameRoom;
 import models.Logger;
 import models.Logger.Tags;
 
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+
 import org.bson.Document;
 
 /**
@@ -12,7 +15,9 @@ import org.bson.Document;
 public class GameRoomDatabase extends Database<GameRoom> {
 
     public static final String collectionIdent = "gameroomCollection";
-    private static GameRoomDatabase instance = null;
+    private static final GameRoomDatabase instance = new GameRoomDatabase(); //created once when the class is initialized, so concurrent first calls share its lookups and caches
+    private final SingleFlight<String,Document> lookups = new SingleFlight<>(); //coalesces concurrent lookups of the same room
+    private final ConcurrentHashMap<String,Long> versions = new ConcurrentHashMap<>(); //counts the writes of every room since startup
 
     /**
      * This method accesses the singleton instance of the {@code GameRoomDatabase}.
@@ -20,7 +25,6 @@ public class GameRoomDatabase extends Database<GameRoom> {
      * @return The singleton instance of the {@code GameRoomDatabase}.
      */
     public static GameRoomDatabase getInstance() {
-        if(instance == null) instance = new GameRoomDatabase();
         return instance;
     }
 
@@ -33,19 +37,91 @@ public class GameRoomDatabase extends Database<GameRoom> {
 
     /**
      * This method attempts to find the {@code GameRoom} instance specified by its {@code _id}.
+     * Concurrent lookups of the same room share one query and one {@code Document}, which must therefore not be modified.
+     * A lookup is never shared with a caller that starts after the room was written, so a caller that holds the {@code RoomLock}
+     * always sees the writes of the previous holder.
      * 
      * @param id The id of the {@code GameRoom}.
      * @return The Document representation of the {@code GameRoom}.
      */
     public Document findOne(String id) {
-        try {
-            return findByValue("_id", id).get(0);
+        return lookups.execute(id, () -> {
+            try {
+                return findByValue("_id", id).get(0);
 
-        } catch (IndexOutOfBoundsException e) {
-            Logger.Log(Tags.ERR,e.getMessage());
-            return null;
+            } catch (IndexOutOfBoundsException e) {
+                Logger.Log(Tags.ERR,e.getMessage());
+                return null;
         
-        }
+            }
+        });
+    }
+
+    /**
+     * This method is the non-blocking counterpart of {@code findOne}.
+     * 
+     * @param id The id of the {@code GameRoom}.
+     * @return A stage that completes with the Document representation of the {@code GameRoom}, or with {@code null} if it does not exist.
+     */
+    public CompletionStage<Document> findOneAsync(String id) {
+        return findAsync("_id", id).thenApply(list -> list.isEmpty() ? null : list.get(0));
+    }
+
+    /**
+     * This method returns how often a room was written since the server started. The version is only increased after the write finished
+     * and after {@code SingleFlight.forget}, so a lookup started after reading the version cannot join a lookup from before the write.
+     * A room that is looked up after reading the version is therefore at least as new as the version.
+     * Writes of other servers to the same Database are not counted.
+     * 
+     * @param id The id of the {@code GameRoom}.
+     * @return The version of the room.
+     */
+    public long version(String id) {
+        return versions.getOrDefault(id, 0L);
+    }
+
+    /**
+     * This method updates a room and increases its version.
+     * 
+     * @param object The room that is to be updated.
+     * @return A status code.
+     */
+    @Override
+    public int update(GameRoom object) {
+        int i = super.update(object);
+        lookups.forget(object.unique());
+        versions.merge(object.unique(), 1L, Long::sum);
+
+        return i;
+    }
+
+    /**
+     * This method inserts a room and increases its version.
+     * 
+     * @param item The room that is to be inserted.
+     * @return A status code.
+     */
+    @Override
+    public int insert(GameRoom item) {
+        int i = super.insert(item);
+        lookups.forget(item.unique());
+        versions.merge(item.unique(), 1L, Long::sum);
+
+        return i;
+    }
+
+    /**
+     * This method is the non-blocking counterpart of {@code update}.
+     * 
+     * @param object The room that is to be updated.
+     * @return A stage that completes with a status code.
+     */
+    @Override
+    public CompletionStage<Integer> updateAsync(GameRoom object) {
+        return super.updateAsync(object).whenComplete((i, e) -> {
+            lookups.forget(object.unique());
+            versions.merge(object.unique(), 1L, Long::sum);
+        });
     }
 
     /**
@@ -0,0 +1,74 @@
+package db;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * This class coalesces identical concurrent lookups. While a lookup for a key is running, every other caller asking for the same key
+ * waits for that lookup and gets the same result instead of sending its own query to the Database.
+ * Results are not cached; once a lookup finished, the next caller starts a new one.
+ * A running lookup may have read the key before it was written. So every write of a key has to call {@code forget} once it finished:
+ * callers that start after the write then start a new lookup instead of joining one that can return the data from before the write.
+ *
+ * @param <K> The type of the key that identifies a lookup.
+ * @param <V> The type of the result.
+ */
+public class SingleFlight<K,V> {
+
+    private final ConcurrentHashMap<K,CompletableFuture<V>> inFlight = new ConcurrentHashMap<>(); //all running lookups
+
+    /**
+     * This method runs the lookup for the key, or waits for the lookup that is already running for it.
+     *
+     * @param key The key that identifies the lookup.
+     * @param lookup The lookup that is run if none is running for the key.
+     * @return The result of the lookup. All concurrent callers get the same instance.
+     */
+    public V execute(K key, Supplier<V> lookup) {
+        CompletableFuture<V> own = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, own);
+
+        if(running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw (e.getCause() instanceof RuntimeException) ? (RuntimeException) e.getCause() : e;
+            }
+        }
+
+        try {
+            V result = lookup.get();
+            own.complete(result);
+
+            return result;
+        } catch (RuntimeException e) {
+            own.completeExceptionally(e);
+
+            throw e;
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    /**
+     * This method stops new callers from joining the lookup that is running for the key. It has to be called after every write of the key.
+     * Callers that already joined the running lookup still get its result, as their calls overlapped the write.
+     *
+     * @param key The key that was written.
+     */
+    public void forget(K key) {
+        inFlight.remove(key);
+    }
+
+    /**
+     * This method returns the number of lookups that are currently running.
+     *
+     * @return The number of running lookups.
+     */
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+}
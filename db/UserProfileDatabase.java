@@ -3,15 +3,24 @@ package db;
 import models.*;
 import models.Logger.Tags;
 
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
 import org.bson.Document;
 
+import Exceptions.DatabaseReadException;
+
 /**
  * This class represents the interface between the Backend Database and the API, specified for the {@code UserProfile} class.
  */
 public class UserProfileDatabase extends Database<UserProfile> {
 
-    private static UserProfileDatabase instance = null;
+    private static final UserProfileDatabase instance = new UserProfileDatabase(); //created once when the class is initialized, so concurrent first calls share its lookups and caches
     private static final String collectionIdent = "userCollection"; //the collection name for the identifier, needed to create a MongoCollection. the string is unique to each database
+    private final SingleFlight<String,Document> lookups = new SingleFlight<>(); //coalesces concurrent lookups of the same user
+    private final VerificationCache verified = new VerificationCache(60_000, 10_000, 100_000); //remembers known users for 60s and unknown IDs for 10s
 
     /**
      * This method is used to access the singleton instance of the {@code UserProfileDatabase}.
@@ -19,7 +28,6 @@ public class UserProfileDatabase extends Database<UserProfile> {
      * @return The singleton instance of the {@code UserProfileDatabase}.
      */
     public static UserProfileDatabase getInstance() {
-        if(instance == null) instance = new UserProfileDatabase();
         return instance;
     }
 
@@ -32,30 +40,181 @@ public class UserProfileDatabase extends Database<UserProfile> {
     
     /**
      * This method checks if there is any instance of the specified user in the Database.
+     * The result is remembered for a short time, so repeated calls for the same ID, known or not, do not reach the Database.
+     * A failed transaction is not remembered.
      * 
      * @param firebaseID The specified user.
      * @return Returns {@code true} if the user exists and {@code false} otherwise.
      */
     public boolean verifyUser(String firebaseID) {
-        return exists("_id", firebaseID);
+        Boolean cached;
+        if((cached = verified.lookup(firebaseID)) != null) return cached;
+
+        long count = count("_id", firebaseID);
+        if(count >= 0) verified.put(firebaseID, count > 0);
+
+        return count > 0;
+    }
+
+    /**
+     * This method forgets the remembered verification of a user. It has to be called whenever a user is registered or removed
+     * without going through this class.
+     * 
+     * @param firebaseID The specified user.
+     */
+    public void invalidateUser(String firebaseID) {
+        verified.invalidate(firebaseID);
+    }
+
+    /**
+     * This method returns the number of remembered verifications.
+     * 
+     * @return The number of entries in the verification cache.
+     */
+    public int verifiedUsers() {
+        return verified.size();
+    }
+
+    /**
+     * This method inserts a new user and forgets a remembered unknown verification of their ID.
+     * 
+     * @param item The user that is to be inserted.
+     * @return A status code.
+     */
+    @Override
+    public int insert(UserProfile item) {
+        int i = super.insert(item);
+        lookups.forget(item.unique());
+        verified.invalidate(item.unique());
+        ProfileResponseCache.invalidate(item.unique());
+
+        return i;
+    }
+
+    /**
+     * This method updates a user and removes their cached profile response.
+     * 
+     * @param object The user that is to be updated.
+     * @return A status code.
+     */
+    @Override
+    public int update(UserProfile object) {
+        int i = super.update(object);
+        lookups.forget(object.unique());
+        ProfileResponseCache.invalidate(object.unique());
+
+        return i;
+    }
+
+    /**
+     * This method is the non-blocking counterpart of {@code insert}.
+     * 
+     * @param item The user that is to be inserted.
+     * @return A stage that completes with a status code.
+     */
+    @Override
+    public CompletionStage<Integer> insertAsync(UserProfile item) {
+        return super.insertAsync(item).whenComplete((i, e) -> {
+            lookups.forget(item.unique());
+            verified.invalidate(item.unique());
+            ProfileResponseCache.invalidate(item.unique());
+        });
+    }
+
+    /**
+     * This method is the non-blocking counterpart of {@code update}.
+     * 
+     * @param object The user that is to be updated.
+     * @return A stage that completes with a status code.
+     */
+    @Override
+    public CompletionStage<Integer> updateAsync(UserProfile object) {
+        return super.updateAsync(object).whenComplete((i, e) -> {
+            lookups.forget(object.unique());
+            ProfileResponseCache.invalidate(object.unique());
+        });
+    }
+
+    /**
+     * This method is the non-blocking counterpart of {@code verifyUser}. Like there, known users and unknown IDs are remembered,
+     * and a failed lookup is not.
+     * 
+     * @param firebaseID The specified user.
+     * @return A stage that completes with {@code true} if the user exists and {@code false} otherwise.
+     *         It completes exceptionally with a {@code DatabaseReadException}, wrapped in a {@code CompletionException}, if the lookup failed.
+     */
+    public CompletionStage<Boolean> verifyUserAsync(String firebaseID) {
+        Boolean cached;
+        if((cached = verified.lookup(firebaseID)) != null) return CompletableFuture.completedFuture(cached);
+
+        return countAsync("_id", firebaseID).thenApply(count -> {
+            if(count < 0)
+                throw new CompletionException(new DatabaseReadException("The user "+firebaseID+" could not be verified. The Database failed."));
+            //
+
+            verified.put(firebaseID, count > 0);
+            return count > 0;
+        });
+    }
+
+    /**
+     * This method is the non-blocking counterpart of {@code findUser}.
+     * 
+     * @param firebaseID The Firebase ID of the user that is looked up.
+     * @return A stage that completes with the {@code Document} of the user, or with {@code null} if the user does not exist.
+     */
+    public CompletionStage<Document> findUserAsync(String firebaseID) {
+        return findAsync("_id", firebaseID).thenApply(list -> list.isEmpty() ? null : list.get(0));
     }
 
     /**
      * This method returns the {@code Document} containing all of the users information.
      * 
+     * Concurrent lookups of the same user share one query and one {@code Document}, which must therefore not be modified.
+     * A lookup is never shared with a caller that starts after the user was written.
+     * 
      * @param firebaseID The Firebase ID of the user that is looked up.
      * @return A {@code Document} instance containing the user's information; needs to be decoded. Returns {@code null} if the user does not exist.
      */
     public Document findUser(String firebaseID) {
-        try {
-            return findByValue("_id", firebaseID).get(0);
+        Document doc = lookups.execute(firebaseID, () -> lookupUser(firebaseID));
         
-        } catch (IndexOutOfBoundsException e) {
+        if(doc != null) verified.put(firebaseID, true);
             
-            return null;
-        }
+        return doc;
     }
 
+    /**
+     * This method works like {@code findUser}, but always sends its own query instead of joining a running lookup.
+     * Used where the result is cached, as a running lookup may have started before the cache was stamped.
+     * 
+     * @param firebaseID The Firebase ID of the user that is looked up.
+     * @return A {@code Document} instance containing the user's information. Returns {@code null} if the user does not exist.
+     */
+    public Document findUserUncoalesced(String firebaseID) {
+        Document doc = lookupUser(firebaseID);
+
+        if(doc != null) verified.put(firebaseID, true);
+
+        return doc;
+    }
+
+
+    /**
+     * This method looks up the usernames of several users with a single query.
+     * 
+     * @param firebaseIDs The Firebase IDs of the users.
+     * @return A map from Firebase ID to username. Users that do not exist are missing from the map.
+     */
+    public Map<String,String> findUserNames(Collection<String> firebaseIDs) {
+        Map<String,String> names = new HashMap<>();
+
+        for(Document doc : findAnyOf("_id", new HashSet<>(firebaseIDs), "username"))
+            names.put(doc.getString("_id"), doc.getString("username"));
+        //
+
+        return names;
+    }
 
     /**
      * This method is used to find a {@code UserProfile}s that is registered under the given name.
@@ -72,4 +231,16 @@ public class UserProfileDatabase extends Database<UserProfile> {
             return null;
         }
     }
+
+    /* PRIVATE FUNCTIONS */
+
+    private Document lookupUser(String firebaseID) {
+        try {
+            return findByValue("_id", firebaseID).get(0);
+        
+        } catch (IndexOutOfBoundsException e) {
+            
+            return null;
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,101 @@
+package db;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class remembers for a short time which Firebase IDs belong to a registered user and which do not.
+ * Known users are kept longer than unknown IDs, so a new registration becomes visible quickly even without invalidation.
+ * Both maps are bounded; once a map is full it is cleared, so bogus IDs cannot grow it without limit.
+ */
+public class VerificationCache {
+
+    private final long verifiedNanos; //how long a known user is remembered
+    private final long unknownNanos; //how long an unknown ID is remembered
+    private final int maxEntries; //the maximum number of entries per map
+
+    private final ConcurrentHashMap<String,Long> verified = new ConcurrentHashMap<>(); //known users and the time their entry expires
+    private final ConcurrentHashMap<String,Long> unknown = new ConcurrentHashMap<>(); //unknown IDs and the time their entry expires
+
+    /**
+     * Creates an empty {@code VerificationCache}.
+     *
+     * @param verifiedMillis How long a known user is remembered, in milliseconds.
+     * @param unknownMillis How long an unknown ID is remembered, in milliseconds.
+     * @param maxEntries The maximum number of entries per map.
+     */
+    public VerificationCache(long verifiedMillis, long unknownMillis, int maxEntries) {
+        this.verifiedNanos = TimeUnit.MILLISECONDS.toNanos(verifiedMillis);
+        this.unknownNanos = TimeUnit.MILLISECONDS.toNanos(unknownMillis);
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * This method looks up whether a Firebase ID is known to belong to a registered user.
+     *
+     * @param firebaseID The Firebase ID.
+     * @return {@code true} if the user is known, {@code false} if the ID is known to be unknown, and {@code null} if nothing is remembered.
+     */
+    public Boolean lookup(String firebaseID) {
+        long now = System.nanoTime();
+
+        if(valid(verified, firebaseID, now)) return Boolean.TRUE;
+        if(valid(unknown, firebaseID, now)) return Boolean.FALSE;
+
+        return null;
+    }
+
+    /**
+     * This method remembers the result of a verification.
+     *
+     * @param firebaseID The Firebase ID.
+     * @param exists Whether the ID belongs to a registered user.
+     */
+    public void put(String firebaseID, boolean exists) {
+        if(exists) {
+            unknown.remove(firebaseID);
+            put(verified, firebaseID, verifiedNanos);
+        } else {
+            verified.remove(firebaseID);
+            put(unknown, firebaseID, unknownNanos);
+        }
+    }
+
+    /**
+     * This method forgets everything remembered about a Firebase ID. Called when a user is registered or removed.
+     *
+     * @param firebaseID The Firebase ID.
+     */
+    public void invalidate(String firebaseID) {
+        verified.remove(firebaseID);
+        unknown.remove(firebaseID);
+    }
+
+    /**
+     * This method returns the number of remembered IDs, including expired entries that were not removed yet.
+     *
+     * @return The number of entries.
+     */
+    public int size() {
+        return verified.size() + unknown.size();
+    }
+
+    /* PRIVATE FUNCTIONS */
+
+    private static boolean valid(ConcurrentHashMap<String,Long> map, String firebaseID, long now) {
+        Long expires = map.get(firebaseID);
+        if(expires == null) return false;
+
+        if(expires - now > 0) return true;
+
+        map.remove(firebaseID, expires);
+        return false;
+    }
+
+    private void put(ConcurrentHashMap<String,Long> map, String firebaseID, long ttlNanos) {
+        if(map.size() >= maxEntries) map.clear();
+
+        map.put(firebaseID, System.nanoTime() + ttlNanos);
+    }
+
+}
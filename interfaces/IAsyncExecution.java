@@ -0,0 +1,22 @@
+package interfaces;
+
+import java.util.concurrent.CompletionStage;
+
+import models.Tracer;
+import play.mvc.*;
+
+/**
+ * This interface is used to encapsulate an API-call that completes asynchronously. It is the asynchronous counterpart of {@code ITryCatchExecution}.
+ */
+public interface IAsyncExecution {
+
+    /**
+     * This method encapsulates any asynchronous API-Call on the server side.
+     *
+     * @param trace The root span of the API-call. It stays open until the stage completes; steps that run on other threads are recorded
+     *              as its children with {@code Tracer.span(trace, name)}.
+     * @return A stage that completes with the Result to be sent to the client.
+     * @throws Exception Throws any Exceptions that occur while the stage is created.
+     */
+    public CompletionStage<Result> Try(Tracer.Span trace) throws Exception;
+}
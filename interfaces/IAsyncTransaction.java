@@ -0,0 +1,23 @@
+package interfaces;
+
+import com.mongodb.reactivestreams.client.MongoCollection;
+import org.bson.Document;
+import org.reactivestreams.Publisher;
+
+/**
+ * This interface provides a method for the {@code Database<T>} class to handle non-blocking transactions to the database.
+ * It is the asynchronous counterpart of {@code ITransaction}.
+ *
+ * @param <R> The type of the items the transaction emits.
+ */
+public interface IAsyncTransaction<R> {
+
+    /**
+     * The method that encapsulates non-blocking database transactions. It must not block; it only builds the {@code Publisher}.
+     *
+     * @param collection The reactive collection the transaction runs on.
+     * @return A {@code Publisher} of the transaction's results. The transaction starts once it is subscribed to.
+     */
+    public Publisher<R> commit(MongoCollection<Document> collection);
+
+}
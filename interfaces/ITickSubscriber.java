@@ -0,0 +1,18 @@
+package interfaces;
+
+/**
+ * This interface is used to receive the aggregated synchronization frames the {@code TickBroadcaster} publishes for a running game.
+ */
+public interface ITickSubscriber {
+
+    /**
+     * This method is called once per tick with the aggregated synchronization data of all players of a room.
+     * It is called from a scheduler thread and should return quickly.
+     *
+     * @param roomID The ID of the room the frame belongs to.
+     * @param tick The number of the tick, counting up from 0 for every running minigame.
+     * @param frame The aggregated frame. The array is shared between all subscribers and must not be modified.
+     */
+    public void publish(int roomID, long tick, byte[] frame);
+
+}
@@ -0,0 +1,81 @@
+package models;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * This class contains the custom Java Flight Recorder events of the server. The events are only recorded while a recording with them
+ * enabled is running, for example with {@code -XX:StartFlightRecording}; otherwise creating and committing an event costs next to nothing.
+ * Every event is timed from {@code begin()} to {@code commit()}, so recordings show which rooms, transitions and Database operations are expensive.
+ */
+public class FlightEvents {
+
+    /**
+     * The Constructor is private because this class does not need an instance.
+     */
+    private FlightEvents() {};
+
+    /**
+     * This event is recorded when a player joins or leaves a {@code GameRoom}.
+     */
+    @Name("game.RoomOperation")
+    @Label("Room Operation")
+    @Category({"Game", "Rooms"})
+    @Description("A player joins or leaves a room, including the Database update")
+    @StackTrace(false)
+    public static class RoomOperation extends Event {
+        @Label("Room ID")
+        public int roomID;
+
+        @Label("Operation")
+        public String operation;
+
+        @Label("Firebase ID")
+        public String firebaseID;
+    }
+
+    /**
+     * This event is recorded when a {@code GameState} changes its {@code State}, a player syncs or a room is occupied.
+     */
+    @Name("game.GameStateOperation")
+    @Label("Game State Operation")
+    @Category({"Game", "Game States"})
+    @Description("A state transition, sync or occupation of a running game")
+    @StackTrace(false)
+    public static class GameStateOperation extends Event {
+        @Label("Room ID")
+        public int roomID;
+
+        @Label("Operation")
+        public String operation;
+
+        @Label("State Before")
+        public String from;
+
+        @Label("State After")
+        public String to;
+    }
+
+    /**
+     * This event is recorded for every blocking Database transaction.
+     */
+    @Name("game.DatabaseTransaction")
+    @Label("Database Transaction")
+    @Category({"Game", "Database"})
+    @Description("A blocking transaction to the MongoDB database")
+    public static class DatabaseTransaction extends Event {
+        @Label("Collection")
+        public String collection;
+
+        @Label("Operation")
+        public String operation;
+
+        @Label("Successful")
+        public boolean successful;
+    }
+
+}
@@ -0,0 +1,179 @@
+package models;
+
+import models.GameState.State;
+
+/**
+ * This class is a bounded, append-only log of everything that happened in a {@code GameState}.
+ * Every event gets an offset that increases by one with each event, starting right after the base of the log. Clients remember the offset of the last event they saw
+ * and ask for all events after it, which also lets them replay events they missed while they were disconnected.
+ * Once the log is full, the oldest events are overwritten.
+ * The base is derived from the game instance, so the offsets of a new game in the same room are larger than all offsets of the games before it;
+ * a cursor that does not belong to this log is treated as if the client saw nothing of it yet.
+ * The log itself is not synchronized; it is guarded by the {@code GameState} that owns it.
+ */
+public class GameEventLog {
+
+    /**
+     * This enumerator identifies what kind of event happened.
+     */
+    public enum EventType {
+        /**The {@code GameState} transitioned into a new {@code State}. The value is empty. */
+        TRANSIT,
+
+        /**The Gamemaster set the minigame. The value is the ID of the minigame. */
+        MINIGAME_SET,
+
+        /**A player posted their result. The value is empty, so no result is seen before all players posted theirs. */
+        SYNC,
+
+        /**All players posted their result and the minigame ended. The value is a JSON array of the results, ordered by player index. */
+        RESULTS,
+
+        /**A player is ready for the next round. The value is empty. */
+        READY,
+
+        /**A player did not respond before the deadline of the {@code State} and was marked as missing. The value is empty. */
+        TIMEOUT
+    }
+
+    private static final int offsetBits = 24; //the bits of an offset that count the events of one log; the bits above hold the game instance
+
+    /**
+     * This class represents a single event of the log.
+     */
+    public static class Event {
+        private final long offset;
+        private final EventType type;
+        private final int player;
+        private final State state;
+        private final String value;
+
+        private Event(long offset, EventType type, int player, State state, String value) {
+            this.offset = offset;
+            this.type = type;
+            this.player = player;
+            this.state = state;
+            this.value = value;
+        }
+
+        /**
+         * @return The offset of the event.
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * @return The type of the event.
+         */
+        public EventType getType() {
+            return type;
+        }
+
+        /**
+         * @return The index of the player that caused the event, or -1 if the event was not caused by a player.
+         *         The Firebase ID is not kept, as it must not be sent to other players.
+         */
+        public int getPlayer() {
+            return player;
+        }
+
+        /**
+         * @return The {@code State} of the game after the event.
+         */
+        public State getState() {
+            return state;
+        }
+
+        /**
+         * @return The value of the event, see {@code EventType}.
+         */
+        public String getValue() {
+            return value;
+        }
+    }
+
+    private static final Event[] none = new Event[0];
+
+    private final Event[] ring; //the ring buffer of events
+    private final long base; //the offset before the first event
+    private long lastOffset; //the offset of the newest event; the base if there are no events yet
+
+    /**
+     * Creates an empty {@code GameEventLog}.
+     *
+     * @param capacity The number of events that are kept.
+     * @param instance The instance of the game the log belongs to. Later games must have larger instances.
+     */
+    public GameEventLog(int capacity, long instance) {
+        ring = new Event[capacity];
+        base = lastOffset = instance << offsetBits;
+    }
+
+    /**
+     * This method appends a new event to the log.
+     *
+     * @param type The type of the event.
+     * @param player The index of the player that caused the event, or -1 if it was not caused by a player.
+     * @param state The {@code State} of the game after the event.
+     * @param value The value of the event.
+     * @return The offset of the new event.
+     */
+    public long append(EventType type, int player, State state, String value) {
+        long offset = ++lastOffset;
+        ring[(int) (offset % ring.length)] = new Event(offset, type, player, state, value);
+
+        return offset;
+    }
+
+    /**
+     * This method returns all events after the specified offset, oldest first.
+     * If some of those events were already overwritten, the result starts at the oldest event that is still kept;
+     * clients can detect this as the first offset is larger than the offset they asked for plus one.
+     *
+     * @param offset The offset of the last event the client saw; 0 to get all kept events.
+     * @return The events after the offset. Empty if there are none.
+     */
+    public Event[] after(long offset) {
+        long first = Math.max(cursor(offset) + 1, firstOffset());
+        if(first > lastOffset) return none;
+
+        Event[] events = new Event[(int) (lastOffset - first + 1)];
+
+        for(int i = 0; i < events.length; i++)
+            events[i] = ring[(int) ((first + i) % ring.length)];
+        //
+
+        return events;
+    }
+
+    /**
+     * This method maps the cursor of a client to this log. A cursor of an earlier game, from before a restart of the server, or 0
+     * is mapped to the base, so the client gets all kept events of this game.
+     *
+     * @param offset The offset of the last event the client saw.
+     * @return The offset the client continues from.
+     */
+    public long cursor(long offset) {
+        return (offset < base || offset > lastOffset) ? base : offset;
+    }
+
+    /**
+     * This method returns the offset of the oldest event that is still kept.
+     *
+     * @return The oldest offset, or the base plus one if there are no events yet.
+     */
+    public long firstOffset() {
+        return Math.max(base + 1, lastOffset - ring.length + 1);
+    }
+
+    /**
+     * This method returns the offset of the newest event.
+     *
+     * @return The newest offset, or the base if there are no events yet.
+     */
+    public long lastOffset() {
+        return lastOffset;
+    }
+
+}
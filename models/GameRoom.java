@@ -1,17 +1,25 @@
 package models;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Stream;
 
 import Exceptions.*;
 import interfaces.*;
 import models.Logger.Tags;
+import db.AdmissionControl;
 import db.GameRoomDatabase;
 
 import org.bson.Document;
 
 /**
  * This Class represents a Game room where players join before starting a game. Each {@code GameRoom} can hold up to 4 players. If a GameRoom has 0 players, it deconstructs itself.
+ * Every operation that looks up a room, changes it and writes it back holds the {@code RoomLock} of the room, so concurrent joins and leaves cannot overwrite each other.
+ * Reserving a room and flagging a room as unoccupied hold the reservation lock instead, so a room cannot be handed out twice.
  */
 public class GameRoom implements IDocumentCoder<GameRoom> {
     /**
@@ -24,7 +32,8 @@ public class GameRoom implements IDocumentCoder<GameRoom> {
 
     private int maxPlayers; //max number of players per room
     private static final int maxRooms = 99; //max number of concurrent rooms
-    private static int occupiedRooms = 0;  //number of currently occupied rooms
+    private static final AtomicInteger occupiedRooms = new AtomicInteger();  //number of currently occupied rooms
+    private static final ReentrantLock reservationLock = new ReentrantLock(); //guards finding, occupying and unoccupying rooms; not synchronized, so virtual threads are not pinned
 
 
     private int roomID; //this field identifies the current room in use
@@ -33,6 +42,7 @@ public class GameRoom implements IDocumentCoder<GameRoom> {
     private HashMap<String,Boolean> updateFlags; //a hashmap that contains the updateflags
     private boolean occupied; //flag that determines if the room is in use
     private boolean cheated = false;
+    private long version; //the version of the room in the Database, read right before the room was looked up
     
     /* API IMPLEMENTATIONS */
 
@@ -48,7 +58,89 @@ public class GameRoom implements IDocumentCoder<GameRoom> {
     public static void joinRoom(int roomID, String firebaseID) throws GameRoomException, UserProfileException {
        UserProfile.verifiy(firebaseID);
 
-       (new GameRoom(roomID)).join(firebaseID);
+       CompletableFuture<Void> lock = RoomLock.lock(roomID);
+       try {
+           (new GameRoom(roomID)).join(firebaseID);
+       } finally {
+           RoomLock.unlock(lock);
+       }
+    }
+
+    /**
+     * This method is the non-blocking counterpart of {@code joinRoom}. The user verification, the room lookup and the update
+     * are chained without holding a thread while the Database is queried. The lookup and the update hold the {@code RoomLock} of the room.
+     *
+     * @param roomID The ID of the {@code GameRoom} the player wants to join.
+     * @param firebaseID The Firebase ID of the player that wants to join.
+     * @return A stage that completes once the player joined. It completes exceptionally with the same Exceptions as {@code joinRoom},
+     *         wrapped in a {@code CompletionException}, with a {@code DatabaseReadException} if the user could not be looked up,
+     *         with a {@code RoomUpdateException} if the room could not be written,
+     *         or with a {@code DatabaseBusyException} if the Database did not admit a transaction.
+     */
+    public static CompletionStage<Void> joinRoomAsync(int roomID, String firebaseID) {
+        return joinRoomAsync(roomID, firebaseID, null);
+    }
+
+    /**
+     * This method works like {@code joinRoomAsync(int, String)}, but records the user verification, the room lookup and the update
+     * as child spans of the specified trace. The spans are closed on the thread that completes the step.
+     *
+     * @param roomID The ID of the {@code GameRoom} the player wants to join.
+     * @param firebaseID The Firebase ID of the player that wants to join.
+     * @param trace The span of the API-call, or {@code null} if it is not traced.
+     * @return A stage that completes once the player joined, or exceptionally like {@code joinRoomAsync(int, String)}.
+     */
+    public static CompletionStage<Void> joinRoomAsync(int roomID, String firebaseID, Tracer.Span trace) {
+        Tracer.Span verify = Tracer.span(trace, "UserProfile.verify");
+
+        return UserProfile.verifyAsync(firebaseID)
+            .whenComplete((verified, e) -> verify.close())
+            .thenCompose(verified -> RoomLock.lockAsync(roomID, () -> joinAsync(roomID, firebaseID, trace)))
+            .thenAccept(status -> {
+                if(status != 0)
+                    throw new CompletionException(new RoomUpdateException("The room " + roomID + " could not be updated. Try again."));
+                //
+            });
+    }
+
+    /**
+     * This method looks up a room, adds a player and writes the room back without blocking. Used by {@code joinRoomAsync} while it holds the {@code RoomLock}.
+     * Like {@code join}, it records a "join" {@code RoomOperation} event, which ends when the update completes.
+     *
+     * @param roomID The ID of the {@code GameRoom} the player wants to join.
+     * @param firebaseID The Firebase ID of the player that wants to join.
+     * @param trace The span of the API-call, or {@code null} if it is not traced.
+     * @return A stage that completes with the status of the update.
+     */
+    private static CompletionStage<Integer> joinAsync(int roomID, String firebaseID, Tracer.Span trace) {
+        FlightEvents.RoomOperation event = new FlightEvents.RoomOperation();
+        event.begin();
+        Tracer.Span lookup = Tracer.span(trace, "GameRoom.lookup");
+
+        return GameRoomDatabase.getInstance().findOneAsync(String.valueOf(roomID))
+            .whenComplete((doc, e) -> lookup.close())
+            .thenCompose(doc -> {
+                if(doc == null)
+                    throw new CompletionException(new RoomNotFoundException("The room " + roomID + " could not be found."));
+                //
+
+                GameRoom room = (new GameRoom()).decode(doc);
+                Tracer.Span span = Tracer.span(trace, "GameRoom.join");
+
+                try {
+                    room.addPlayer(firebaseID);
+                } catch (GameRoomException | UserProfileException e) {
+                    span.close();
+                    throw new CompletionException(e);
+                }
+
+                return GameRoomDatabase.getInstance().updateAsync(room).whenComplete((status, e) -> span.close());
+            }).whenComplete((status, e) -> {
+                event.roomID = roomID;
+                event.operation = "join";
+                event.firebaseID = firebaseID;
+                event.commit();
+            });
     }
     
     /**
@@ -63,9 +155,19 @@ public class GameRoom implements IDocumentCoder<GameRoom> {
     public static void leaveRoom(int roomID, String firebaseID) throws GameRoomException, UserProfileException { 
         UserProfile.verifiy(firebaseID);
 
-        GameRoom room;
-        (room = new GameRoom(roomID)).leave(firebaseID);
-        if(!room.occupied) GameStateCache.unoccupyRoom(roomID);
+        CompletableFuture<Void> lock = RoomLock.lock(roomID);
+        try {
+            //leaving takes several transactions, admitted as a whole so the room is not left half updated;
+            //the permit is taken after the lock, so no permit is held while waiting for it
+            AdmissionControl.acquire();
+            try {
+                (new GameRoom(roomID)).leave(firebaseID);
+            } finally {
+                AdmissionControl.release();
+            }
+        } finally {
+            RoomLock.unlock(lock);
+        }
     }
     
     /**
@@ -83,6 +185,32 @@ public class GameRoom implements IDocumentCoder<GameRoom> {
     public static int requestGameRoom(String firebaseID, int maxPlayers, boolean cheated) throws GameRoomException, UserProfileException, GameStateException {
         UserProfile.verifiy(firebaseID);    
         
+        //two players must not find the same free room
+        reservationLock.lock();
+        try {
+            //the reservation is admitted as a whole, so a busy Database cannot leave a room occupied without owner;
+            //only the holder of the reservation lock takes a permit, so queued reservations do not use up the permits
+            AdmissionControl.acquire();
+            try {
+                return reserve(firebaseID, maxPlayers, cheated);
+            } finally {
+                AdmissionControl.release();
+            }
+        } finally {
+            reservationLock.unlock();
+        }
+    }
+
+    /**
+     * This method finds a free room, occupies it and lets the requesting player join it as its owner. Used by {@code requestGameRoom}
+     * while it holds the reservation lock and a permit of the {@code AdmissionControl}.
+     *
+     * @param firebaseID The Firebase ID of the player that requested a room.
+     * @param maxPlayers The maximum amount of players for this room.
+     * @param cheated Wether the {@code GameRoom} is cheated or not.
+     * @return Returns the ID of the {@code GameRoom} that has been occupied for the requesting player.
+     */
+    private static int reserve(String firebaseID, int maxPlayers, boolean cheated) throws GameRoomException, UserProfileException, GameStateException {
         int newID;
         Document gameRoomInstance;
         newID = ((gameRoomInstance = GameRoomDatabase.getInstance().findFreeRoom()) == null) ? -1 : Integer.parseInt(gameRoomInstance.getString("_id"));
@@ -90,7 +218,14 @@ public class GameRoom implements IDocumentCoder<GameRoom> {
         GameRoom gm = setOccupiedFlag(newID, maxPlayers);
         gm.cheated = cheated;
 
-        gm.join(firebaseID);
+        //joins of the new room must wait until its owner is written; the room was free, so no holder of its lock needs the reservation lock
+        CompletableFuture<Void> lock = RoomLock.lock(gm.roomID);
+        try {
+            gm.join(firebaseID);
+        } finally {
+            RoomLock.unlock(lock);
+        }
+
         GameStateCache.occupyRoom(gm.roomID);
 
         return gm.roomID;    
@@ -107,8 +242,15 @@ public class GameRoom implements IDocumentCoder<GameRoom> {
      * 
      */
     public static List<String> getCurrentPlayers(int roomID) throws RoomNotFoundException {
+        return (new GameRoom(roomID)).currentPlayers();
+    }
             
-        List<String> players = (new GameRoom(roomID)).players;
+    /**
+     * This method retrieves the usernames of all users in this {@code GameRoom}. The room owner is always the first entry.
+     * 
+     * @return A List of the names of all users in the room.
+     */
+    public List<String> currentPlayers() {
         List<String> names = new ArrayList<String>(4);
         
         for(String s : players) {
@@ -139,7 +281,54 @@ public class GameRoom implements IDocumentCoder<GameRoom> {
     public static boolean checkUpdate(String firebaseID, int roomID) throws GameRoomException, UserProfileException {
         UserProfile.verifiy(firebaseID);
         
-        return (new GameRoom(roomID)).checkUpdate(firebaseID);
+        CompletableFuture<Void> lock = RoomLock.lock(roomID);
+        try {
+            return (new GameRoom(roomID)).checkUpdate(firebaseID);
+        } finally {
+            RoomLock.unlock(lock);
+        }
+    }
+
+    /**
+     * This method creates a {@code GameRoom} from its stored {@code Document} without looking it up in the Database.
+     * Used where the {@code Document} is already at hand, like in the benchmarks.
+     * 
+     * @param doc The stored {@code Document} of the room.
+     * @return The decoded {@code GameRoom}.
+     */
+    public static GameRoom construct(Document doc) {
+        return (new GameRoom()).decode(doc);
+    }
+
+    /**
+     * This method returns the number of currently occupied rooms.
+     * 
+     * @return The number of occupied rooms.
+     */
+    public static int occupiedRooms() {
+        return occupiedRooms.get();
+    }
+
+    /**
+     * This method returns a tag that changes whenever the room is written. Used to check an If-None-Match header
+     * before the room is looked up.
+     * 
+     * @param roomID The ID of the {@code GameRoom}.
+     * @return The current version tag of the room.
+     */
+    public static String versionTag(int roomID) {
+        return "r" + roomID + "." + GameRoomDatabase.getInstance().version(String.valueOf(roomID));
+    }
+
+    /**
+     * This method returns the version tag of this {@code GameRoom} as it was looked up. The version is read right before the lookup,
+     * and a write only increases the version after no new lookup can join one that started before the write.
+     * So the room is at least as new as its tag, and a body built from it can be sent with this tag.
+     * 
+     * @return The version tag of the looked up room.
+     */
+    public String versionTag() {
+        return "r" + roomID + "." + version;
     }
 
     /**
@@ -161,13 +350,24 @@ public class GameRoom implements IDocumentCoder<GameRoom> {
     }
 
     /**
-     * DEBUG FUNCTION: Flushes a {@code GameRoom}, removing all players and setting room to unoccupied.
+     * DEBUG FUNCTION: Flushes a {@code GameRoom}, removing all players, setting room to unoccupied and releasing its {@code GameState}.
+     * Flushing a room that is not occupied does nothing.
      * 
      * @param roomID ID of the {@code GameRoom} that is flushed.
      * @throws GameRoomException Throws this Exception class when: The roomID does not correspond to an existing {@code GameRoom}.
      */
     public static void ForceFlush(int roomID) throws GameRoomException {
-        (new GameRoom(roomID)).unsetOccupiedFlag();
+        CompletableFuture<Void> lock = RoomLock.lock(roomID);
+        try {
+            AdmissionControl.acquire();
+            try {
+                (new GameRoom(roomID)).unsetOccupiedFlag();
+            } finally {
+                AdmissionControl.release();
+            }
+        } finally {
+            RoomLock.unlock(lock);
+        }
     } 
 
     public int maximumPlayers() {
@@ -217,7 +417,7 @@ public class GameRoom implements IDocumentCoder<GameRoom> {
         roomID = Integer.parseInt(doc.getString("_id"));
         maxPlayers = Integer.parseInt(doc.getString("maxPlayers"));
         numOfPlayers = Integer.parseInt(doc.getString("numPlayers"));
-        players = doc.<String>getList("players",String.class);
+        players = new ArrayList<>(doc.<String>getList("players",String.class)); //copied, as the Document can be shared between concurrent lookups
         List<String> flags = doc.<String>getList("update",String.class);        
         occupied = Boolean.parseBoolean(doc.getString("occupied"));
         cheated = Boolean.parseBoolean(doc.getString("cheated"));
@@ -268,18 +468,21 @@ public class GameRoom implements IDocumentCoder<GameRoom> {
         //initializes the users array and the number of players, as well as owner
         //roomnotfound is thrown when a room is not occupied
         Document doc;
-        Logger.Log(Tags.INF,"Attemtping room lookup at "+roomID);
+        Logger.Logf(Tags.INF,"Attemtping room lookup at {}",roomID);
         
-        if((doc = GameRoomDatabase.getInstance().findOne(String.valueOf(roomID))) == null) {
-            Logger.Log(Tags.FLR,"Room lookup returned null.");
+        try (Tracer.Span span = Tracer.span("GameRoom.lookup")) {
+            version = GameRoomDatabase.getInstance().version(String.valueOf(roomID));
 
-            throw new RoomNotFoundException("The room " + roomID + " could not be found.");
-        }    
-        
-        Logger.Log(Tags.SCS,"Room successfully found and instantiated.");
+            if((doc = GameRoomDatabase.getInstance().findOne(String.valueOf(roomID))) == null) {
+                Logger.Log(Tags.FLR,"Room lookup returned null.");
+
+                throw new RoomNotFoundException("The room " + roomID + " could not be found.");
+            }    
         
-        decode(doc);
+            Logger.Log(Tags.SCS,"Room successfully found and instantiated.");
         
+            decode(doc);
+        }    
     }    
 
     /**
@@ -303,6 +506,31 @@ public class GameRoom implements IDocumentCoder<GameRoom> {
      * @throws IdenticalUserException Throws an Exception when a user tries to join the same room again.
      */  
     private void join(String firebaseID) throws RoomFullException, RoomNotFoundException, IdenticalUserException {
+        FlightEvents.RoomOperation event = new FlightEvents.RoomOperation();
+        event.begin();
+
+        try (Tracer.Span span = Tracer.span("GameRoom.join")) {
+            addPlayer(firebaseID);
+
+            GameRoomDatabase.getInstance().update(this);
+        } finally {
+            event.roomID = roomID;
+            event.operation = "join";
+            event.firebaseID = firebaseID;
+            event.commit();
+        }
+    }
+
+    /**
+     * This method adds a player to the {@code GameRoom} without writing it to the Database. All other players' updateFlags are set to {@code true}.
+     *
+     * @param firebaseID The firebaseID of the user that joins the room
+     * 
+     * @throws RoomFullException Throws an Exception when the User wants to join a room that is already full.
+     * @throws RoomNotFoundException Throws an Exception when the specified room is not occupied.
+     * @throws IdenticalUserException Throws an Exception when a user tries to join the same room again.
+     */  
+    private void addPlayer(String firebaseID) throws RoomFullException, RoomNotFoundException, IdenticalUserException {
         if(numOfPlayers >= maxPlayers) throw new RoomFullException("The Room " + roomID + " is already full!");
         if(!occupied) throw new RoomNotFoundException("The Room "+roomID+" is not occupied!");
         if(players.indexOf(firebaseID) != -1) throw new IdenticalUserException("The user "+firebaseID+" is already in room "+roomID+"!");
@@ -315,9 +543,6 @@ public class GameRoom implements IDocumentCoder<GameRoom> {
 
         players.add(firebaseID);
         updateFlags.put(firebaseID,false);
-        
-
-        GameRoomDatabase.getInstance().update(this);
     }        
 
     /**
@@ -329,13 +554,34 @@ public class GameRoom implements IDocumentCoder<GameRoom> {
      * @throws UserNotFoundException If the leaving user was not in the room to begin with, an exception is thrown.
      */ 
     private void leave(String firebaseID) throws UserNotFoundException {
+        FlightEvents.RoomOperation event = new FlightEvents.RoomOperation();
+        event.begin();
+
+        try (Tracer.Span span = Tracer.span("GameRoom.leave")) {
+            removePlayer(firebaseID);
+        } finally {
+            event.roomID = roomID;
+            event.operation = "leave";
+            event.firebaseID = firebaseID;
+            event.commit();
+        }
+    }
+
+    /**
+     * This method removes a player from the room and writes it back to the Database. Used by {@code leave}.
+     * 
+     * @param firebaseID The player that wants to leave the room.
+     * 
+     * @throws UserNotFoundException If the leaving user was not in the room to begin with, an exception is thrown.
+     */ 
+    private void removePlayer(String firebaseID) throws UserNotFoundException {
 
 
         int userIndex = players.indexOf(firebaseID);
         //if userIndex is less than 0, the user was not in the gameroom
 
         if(userIndex < 0) {
-            Logger.Log(Tags.ERR,"User "+firebaseID+" is not in room.");
+            Logger.Logf(Tags.ERR,"User {} is not in room.",firebaseID);
             throw new UserNotFoundException("The user "+firebaseID+" is not in the room!");
         
         } else {
@@ -357,23 +603,32 @@ public class GameRoom implements IDocumentCoder<GameRoom> {
     }    
 
     /**
-     * This method flags the room as unoccupied and writes it back to the Database. The entire room is cleared.
-     *
+     * This method flags the room as unoccupied, writes it back to the Database and releases its {@code GameState}. The entire room is cleared.
+     * The caller holds the {@code RoomLock} of the room; the reservation lock is taken as well, so the room is not handed out again before its {@code GameState} is released.
+     * If the room is not occupied, nothing is done, so the counter of occupied rooms cannot drift.
      */ 
     private void unsetOccupiedFlag() {
-        //set flags on BD side
-        Logger.Log(Tags.INF,"Room "+roomID+" empty. Flagging as unset.");
+        if(!occupied) return;
 
-        occupiedRooms--;
-        numOfPlayers = 0;
-        players.clear();
-        updateFlags.clear();
-        occupied = false;
-        GameRoomDatabase.getInstance().update(this);
+        //set flags on BD side
+        Logger.Logf(Tags.INF,"Room {} empty. Flagging as unset.",roomID);
+
+        reservationLock.lock();
+        try {
+            occupiedRooms.decrementAndGet();
+            numOfPlayers = 0;
+            players.clear();
+            updateFlags.clear();
+            occupied = false;
+            GameRoomDatabase.getInstance().update(this);
+            GameStateCache.unoccupyRoom(roomID);
+        } finally {
+            reservationLock.unlock();
+        }
     }    
 
     /**
-     * This method occupies a room on the DB side. If the {@code roomID} is negative,
+     * This method occupies a room on the DB side. The caller holds the reservation lock. If the {@code roomID} is negative,
      * the method attempts to write a new {@code GameRoom} into the Database instead.
      * The method returns the newly created {@code GameRoom} for further processing.
      *
@@ -384,15 +639,15 @@ public class GameRoom implements IDocumentCoder<GameRoom> {
     private static GameRoom setOccupiedFlag(int roomID, int maxPlayers) throws NoRoomForRoomsException {
         //set flags on DB side
         
-        if(occupiedRooms<maxRooms) {
-            occupiedRooms++;
+        if(occupiedRooms.get()<maxRooms) {
+            int occupiedCount = occupiedRooms.incrementAndGet();
             
             if(roomID<0) {
                 //the player requested a gameroom while all existing gamerooms in the database were occupied.
                 //but theres still room for more gamerooms
                 //the trick is: if all rooms are occupied but there is still room for more rooms, take current occupiedRooms number as new roomID
                 GameRoom newRoom = new GameRoom();
-                newRoom.roomID = occupiedRooms;
+                newRoom.roomID = occupiedCount;
                 newRoom.maxPlayers = maxPlayers; 
                 newRoom.occupied = true;
                 GameRoomDatabase.getInstance().insert(newRoom);
@@ -1,6 +1,11 @@
 package models;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import models.GameEventLog.EventType;
 import models.Logger.Tags;
 
 import Exceptions.*;
@@ -67,15 +72,18 @@ public class GameState {
        //if all players are ready (i.e everyone has seen the results) for the next minigame, the gamemaster can choose again (wrap back to GM_CHOOSING)
     }
 
+    private final int roomID; //the ID of the corresponding GameRoom
+    private static final AtomicLong instances = new AtomicLong(); //counts all created games
+    private final long instance = instances.incrementAndGet(); //tells this game apart from earlier games in the same room
     private State gameState; //current gamestate of the room
-    private List<String> players; //players in the gameroom
+    private volatile List<String> players; //players in the gameroom; volatile, as the player data calls read it without the lock
     
     private int GMindex = -1; //index of the GM; -1 if no GM is assigned
     private int curMinigame = -1; //current running minigame; if -1, no minigame is played.
-    private String initialValues = ""; //the initial values of the game
+    private byte[] initialValues = new byte[0]; //the initial values of the game as raw bytes
     private int sociality = -1; //determines how social the party is
 
-    private HashMap<String,String> playerData; //hashmap to manage arbitrary synchronisation data
+    private ConcurrentHashMap<String,byte[]> playerData; //hashmap to manage arbitrary synchronisation data as raw bytes; read concurrently by the TickBroadcaster
     private List<String> minigameResults; //results of minigame after each minigame
     private boolean initResults = true; //used to determine if the results need to be re-determined
 
@@ -83,9 +91,18 @@ public class GameState {
     private HashMap<String,String> results; //player synchronized results
     private HashMap<String,PlayerState> states; //player syncrhonized states
     private HashMap<String,Boolean> changed; //flags to see if another player posted a result
+    private final GameEventLog events = new GameEventLog(256, instance); //everything that happened in this game, for clients to catch up with
 
-    private static boolean firstTimeSetup = true; //check for initializing the transitions hashmap
-    private static HashMap<State,State> transitions; //all legal transitions
+    private long version = 0; //increased on every change that is visible in the snapshot
+    private final long[] snapshotVersions = { -1, -1 }; //the version each cached snapshot was created at, per encoding
+    private final byte[][] snapshots = new byte[2][]; //the cached serialized snapshots, per encoding
+
+    private static final HashMap<State,State> transitions = initTransitions(); //all legal transitions; created with the class, so concurrent first games cannot see it half-filled
+
+    private static final TimerWheel timers = new TimerWheel(50); //shared timer wheel for the round deadlines of all rooms
+    private static final EnumMap<State,Long> deadlines = initDeadlines(); //deadline per state in milliseconds; states without an entry have no deadline
+    private static final String missingResult = "##TIMEOUT"; //result of a player that did not post their result in time
+    private TimerWheel.Timeout deadline; //the pending deadline of the current state; null if there is none
     
     private boolean roomOwnerAlwaysGM = false; //if this flag is set, the room owner is always gamemaster
 
@@ -95,16 +112,33 @@ public class GameState {
 
     /**
      * This method creates a new {@code GameState}. Usually only needed by the {@code GameStateCache} to fill in a nullpointer.
+     * 
+     * @param roomID The ID of the corresponding {@code GameRoom}.
      */
-    public static GameState CreateGame() {
+    public static GameState CreateGame(int roomID) {
         Logger.Log(Tags.INF,"Creating a GameState instance");
         
-        if(firstTimeSetup) {
-            firstTimeSetup = false;
-            initTransitions();
+        return new GameState(roomID);
+    }
+    
+    /**
+     * This method sets the deadline for a {@code State}. Once a game stays in the {@code State} for longer than the deadline,
+     * players that did not respond are marked as missing and the game advances on its own.
+     * Only GM_CHOOSING, STARTING, RUNNING and MINIGAME_END support deadlines. If the Gamemaster does not choose a minigame in time,
+     * the next player becomes Gamemaster, unless the room owner is always Gamemaster. The deadline applies to every {@code State} entered afterwards.
+     * Deadlines can also be set with the system properties {@code game.deadline.<STATE>}.
+     * 
+     * @param state The {@code State} the deadline is set for.
+     * @param millis The deadline in milliseconds. A value of 0 or less removes the deadline.
+     */
+    public static void setDeadline(State state, long millis) {
+        synchronized(deadlines) {
+            if(millis > 0)
+                deadlines.put(state, millis);
+            else
+                deadlines.remove(state);
+            //
         }
-
-        return new GameState();
     }
     
     /**
@@ -112,12 +146,13 @@ public class GameState {
      * 
      * @throws IllegalGameStateTransitionException  Throws this Exception if the room is already occupied.
      */
-    public void occupy() throws IllegalGameStateTransitionException {
+    public synchronized void occupy() throws IllegalGameStateTransitionException {
         if(gameState != State.UNOCCUPIED)
             throw new IllegalGameStateTransitionException("The GameState of the Room is not UNOCCUPIED (gameState: " + String.valueOf(gameState) + ") and cannot be set to occupied!");
         //
 
         gameState = State.LOBBY;
+        stateChanged();
     }
 
     /**
@@ -126,7 +161,7 @@ public class GameState {
      * @param players The list of players from the {@code GameRoom} that want to play the game. Initializes the private field {@code players}. 
      * @throws GameStateException Throws this Exception class when: Less than 4 players in room, .
      */
-    public void start(String firebaseID,List<String> players ,int numPlayers, boolean cheated) throws GameStateException {
+    public synchronized void start(String firebaseID,List<String> players ,int numPlayers, boolean cheated) throws GameStateException {
         if(gameState != State.LOBBY)
             throw new IllegalGameStateTransitionException("You cannot start the game in "+String.valueOf(gameState)+" state!");
         if(!players.get(0).equals(firebaseID)) 
@@ -148,7 +183,7 @@ public class GameState {
      * This method returns the index of the player who was chosen as Gamemaster.
      * @return Index of the current GM.
      */
-    public int getGMIndex() {
+    public synchronized int getGMIndex() {
         return GMindex;
     }    
     
@@ -160,12 +195,13 @@ public class GameState {
      * @return The ID of the minigame.
      * @throws GameStateException Throws this Exception when someones is asking for the Minigame at the wrong time.
      */
-    public int getMinigame(String firebaseID) throws GameStateException {
+    public synchronized int getMinigame(String firebaseID) throws GameStateException {
         if(gameState != State.STARTING) 
             throw new GameStateException("Asking for the minigame in the wrong state!");
         //
 
         states.replace(firebaseID,PlayerState.PLAYING);
+        version++;
         if(allInState(PlayerState.PLAYING)) 
             transit();
         //
@@ -176,29 +212,39 @@ public class GameState {
     /**
      * This method returns the initial values for every player.
      * 
-     * @return Initial values to synchronize game start.
+     * @return Initial values to synchronize game start as raw bytes.
      */
-    public String getInitialValues() {
+    public synchronized byte[] getInitialValues() {
         return initialValues;
     }
 
-    public int getSociality() {
+    public synchronized int getSociality() {
         return sociality;
     }
 
     /* GAMEMASTER RELEVANT FUNCTIONS */
 
+    /**
+     * This method sets the current minigame with initial values in String form. The String is stored UTF-8 encoded.
+     * 
+     * @see #setMinigame(String, int, int, byte[])
+     */ 
+    public void setMinigame(String firebaseID, int minigame, int sociality, String initialValues) throws InsufficientPermissionException, IllegalGameStateTransitionException {
+        setMinigame(firebaseID, minigame, sociality, initialValues.getBytes(StandardCharsets.UTF_8));
+    }
+
     /**
      * This method can only be invoked by the GM. It sets the current minigame for all other players to retrieve. Can also only
-     * be called if the current {@code State} is GM_CHOOSING.
+     * be called if the current {@code State} is GM_CHOOSING. The initial values are stored as they are, without any decoding.
      * 
      * @param firebaseID
      * @param minigame
+     * @param initialValues The initial values as raw bytes.
      * @throws InsufficientPermissionException This Exception is thrown when anyone but the Gamemaster is calling the method.
      * @throws IllegalGameStateTransitionException This Exception is thrown when the method is called during the wrong {@code State}. 
      */ 
-    public void setMinigame(String firebaseID, int minigame, int sociality, String initialValues) throws InsufficientPermissionException, IllegalGameStateTransitionException {
-        Logger.Log(Tags.INF,"Setting minigame "+minigame);
+    public synchronized void setMinigame(String firebaseID, int minigame, int sociality, byte[] initialValues) throws InsufficientPermissionException, IllegalGameStateTransitionException {
+        Logger.Logf(Tags.INF,"Setting minigame {}",minigame);
         
         if(!isGM(firebaseID))
             throw new InsufficientPermissionException("You are not the Gamemaster! Only the Gamemaster can choose a minigame.");
@@ -209,6 +255,7 @@ public class GameState {
         curMinigame = minigame;
         this.sociality = sociality;
         this.initialValues = initialValues;
+        events.append(EventType.MINIGAME_SET, players.indexOf(firebaseID), gameState, String.valueOf(minigame));
 
         transit();
     }
@@ -219,7 +266,7 @@ public class GameState {
      * @param state The specified state in String form.
      * @return Returns {@code true} if all players are in the specified state, and {@code false} otherwise.
      */
-    public boolean areInState(String state) {
+    public synchronized boolean areInState(String state) {
         return allInState(PlayerState.valueOf(state));
     }
     
@@ -231,7 +278,7 @@ public class GameState {
      * @throws InsufficientPermissionException This Exception is thrown when anyone but the Gamemaster is calling the method.
      * @throws IllegalGameStateTransitionException This Exception is thrown when the method is called during the wrong {@code State}. 
      */
-    public void nextRound(String firebaseID) throws InsufficientPermissionException, IllegalGameStateTransitionException {
+    public synchronized void nextRound(String firebaseID) throws InsufficientPermissionException, IllegalGameStateTransitionException {
         if(!isGM(firebaseID))
             throw new InsufficientPermissionException("You are not the Gamemaster! Only the Gamemaster can advance the round");
         if(gameState != State.MINIGAME_END || !allInState(PlayerState.READY))
@@ -250,7 +297,7 @@ public class GameState {
      * @throws InsufficientPermissionException  If anyone but the Gamemaster is calling this method, this Exception is thrown.
      * @throws IllegalGameStateTransitionException  If the Gamemaster tries to end the game prematurely, an Exception is thrown.
      */
-    public void setGameOver(String firebaseID) throws InsufficientPermissionException, IllegalGameStateTransitionException {
+    public synchronized void setGameOver(String firebaseID) throws InsufficientPermissionException, IllegalGameStateTransitionException {
         if(!isGM(firebaseID))
             throw new InsufficientPermissionException("You are not the Gamemaster! Only the Gamemaster can end the game.");
         if(gameState != State.MINIGAME_END)
@@ -258,9 +305,10 @@ public class GameState {
         //
         
         gameState = State.PARTY_END;
+        stateChanged();
     }
 
-    public void backToLobby(String firebaseID) throws IllegalGameStateTransitionException, InsufficientPermissionException {
+    public synchronized void backToLobby(String firebaseID) throws IllegalGameStateTransitionException, InsufficientPermissionException {
         if(!isGM(firebaseID)) 
             throw new InsufficientPermissionException("You are not the GameMaster! You are not allowed to transition back to the Lobby.");
         if(gameState != State.PARTY_END)
@@ -277,9 +325,19 @@ public class GameState {
      * 
      * @return The current {@code State}. 
      */
-    public State getState() {
+    public synchronized State getState() {
         return gameState;
     }
+
+    /**
+     * This method returns a tag that changes whenever something visible in the snapshot changes, including when the room starts a new game.
+     * It is read before the data it describes, so the data can only be newer than the tag.
+     * 
+     * @return The version tag of the game.
+     */
+    public synchronized String versionTag() {
+        return roomID + "." + instance + "." + version;
+    }
     
     /**
      * This method syncs a single player and posts their result of a single minigame. It sets all changed flags to {@code true}.
@@ -288,25 +346,37 @@ public class GameState {
      * @param firebaseID
      * @param result
      */
-    public void sync(String firebaseID, String result) {
+    public synchronized void sync(String firebaseID, String result) {
         if(!players.contains(firebaseID)) return;
         //cannot post again!
         if(states.get(firebaseID) == PlayerState.WAITING) return;
     
+        FlightEvents.GameStateOperation event = new FlightEvents.GameStateOperation();
+        event.begin();
+        State from = gameState;
+    
         results.put(firebaseID, result);
         states.replace(firebaseID, PlayerState.WAITING);
+        events.append(EventType.SYNC, players.indexOf(firebaseID), gameState, "");
+        version++;
         for(String s : players)
             changed.replace(s,true);
         //
 
         if(allInState(PlayerState.WAITING) && gameState == State.RUNNING) transit();
+
+        event.roomID = roomID;
+        event.operation = "sync";
+        event.from = from.name();
+        event.to = gameState.name();
+        event.commit();
     }
 
     /**
      * This method returns a list of all player's current {@code PlayerState}.
      * @return List of current states of all players.
      */
-    public List<String> askPlayerStates() {
+    public synchronized List<String> askPlayerStates() {
         List<String> currentStates = new ArrayList<>(4);
         
         for(String s : players)
@@ -323,7 +393,7 @@ public class GameState {
      * @return Returns {@code true} if a change has occured, and {@code false} if not. 
      *         Also returns {@code false} if the player is not part of the session.
      */
-    public boolean hasChanged(String firebaseID) {
+    public synchronized boolean hasChanged(String firebaseID) {
         if(!players.contains(firebaseID)) return false;
 
         boolean res = changed.get(firebaseID);
@@ -338,9 +408,9 @@ public class GameState {
      * This method posts a players game data that other players need to synchronize their game.
      * 
      * @param firebaseID The player that wants to synchronize their data.
-     * @param data  The synchronization data.
+     * @param data  The synchronization data as raw bytes.
      */
-    public void postPlayerData(String firebaseID, String data) {
+    public void postPlayerData(String firebaseID, byte[] data) {
         if(!players.contains(firebaseID)) return;
 
         playerData.replace(firebaseID,data);
@@ -349,9 +419,9 @@ public class GameState {
     /**
      * This method retrieves a specific player's synchronization data for the player.  
      * 
-     * @return A list of all sync data.
+     * @return The raw sync data of the player.
      */
-    public String getPlayerData(int playerIndex) {
+    public byte[] getPlayerData(int playerIndex) {
         if(playerIndex >= players.size()) 
             throw new IndexOutOfBoundsException("The playerIndex is outside the range [0,"+players.size()+"]!");
         //
@@ -359,12 +429,38 @@ public class GameState {
         return playerData.get(players.get(playerIndex));
     }
 
+    /**
+     * This method snapshots the synchronization data of all players into one frame. Used by the {@code TickBroadcaster}.
+     * Frame layout: the tick (long), the number of players (int), then for each player in player order the length of their data (int) followed by the data.
+     * 
+     * @param tick The number of the tick the frame is created for.
+     * @return The aggregated frame.
+     */
+    public byte[] playerDataFrame(long tick) {
+        byte[][] snapshot = new byte[players.size()][];
+        int size = Long.BYTES + Integer.BYTES;
+
+        for(int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = playerData.get(players.get(i));
+            size += Integer.BYTES + snapshot[i].length;
+        }
+
+        ByteBuffer frame = ByteBuffer.allocate(size);
+        frame.putLong(tick).putInt(snapshot.length);
+
+        for(byte[] data : snapshot)
+            frame.putInt(data.length).put(data);
+        //
+
+        return frame.array();
+    }
+
     /**
      * This method returns a List of the Minigame results that is being used by the Client to determine if they won or not.
      * 
      * @return List of Strings that represent the result.
      */
-    public List<String> getResults() {
+    public synchronized List<String> getResults() {
         if(allInState(PlayerState.WAITING)) 
             initResults();
         //
@@ -377,7 +473,7 @@ public class GameState {
      * 
      * @param firebaseID The Firebase ID of the player that is ready.
      */
-    public void postReady(String firebaseID) {
+    public synchronized void postReady(String firebaseID) {
         if(!players.contains(firebaseID)) return;
 
         for(String s : players) {
@@ -386,9 +482,55 @@ public class GameState {
         }
 
         states.replace(firebaseID,PlayerState.READY);
+        events.append(EventType.READY, players.indexOf(firebaseID), gameState, "");
+        version++;
+    }
+
+    /**
+     * This method returns everything a client can see of the game as a serialized JSON-Object.
+     * The serialized form is cached and only created again after the game changed, so polling between changes is cheap.
+     * 
+     * @return The serialized snapshot. The array is shared and must not be modified.
+     */
+    public synchronized byte[] snapshot() {
+        int enc = JsonFactory.getEncoding().ordinal();
+
+        if(snapshotVersions[enc] != version) {
+            //players are only known once the game started
+            List<String> playerStates = (players == null) ? Collections.<String>emptyList() : askPlayerStates();
+            List<String> visible = (players == null) ? Collections.<String>emptyList() : visibleResults();
+
+            snapshots[enc] = JsonFactory.snapshotBody(gameState, GMindex, curMinigame, sociality, playerStates, visible, events.lastOffset());
+            snapshotVersions[enc] = version;
+        }
+
+        return snapshots[enc];
+    }
+
+    /**
+     * This method returns all events of the game after the specified offset.
+     * 
+     * @param offset The offset of the last event the client saw; 0 to get all kept events.
+     * @return The events after the offset, oldest first.
+     * @see GameEventLog#after(long)
+     */
+    public synchronized GameEventLog.Event[] eventsAfter(long offset) {
+        return events.after(offset);
+    }
+
+    /**
+     * This method maps the cursor of a client to the event log of this game. A cursor of an earlier game in the same room is mapped
+     * to the start of this game's log.
+     * 
+     * @param offset The offset of the last event the client saw.
+     * @return The offset the client continues from.
+     * @see GameEventLog#cursor(long)
+     */
+    public synchronized long eventCursor(long offset) {
+        return events.cursor(offset);
     }
 
-    public String info() {
+    public synchronized String info() {
         String result = "GAMESTATE INFO\n";
         
         result += "Current game state: "+String.valueOf(gameState)+"\n";
@@ -402,7 +544,7 @@ public class GameState {
         }
         
         result += "Selected Minigame: "+curMinigame+"\n";
-        result += "Initial Values: "+initialValues+"\n";
+        result += "Initial Values: "+initialValues.length+" bytes\n";
         result += "Sociality: "+sociality+"\n";
         
         result += "Player information: \n";
@@ -432,7 +574,7 @@ public class GameState {
         initResults = true;
         
         minigameResults.clear();
-        initialValues = "";
+        initialValues = new byte[0];
 
         for(String s : players) {
             results.replace(s,"");
@@ -452,7 +594,7 @@ public class GameState {
         //
 
         for(String s : this.players) {    
-            playerData.put(s,"");
+            playerData.put(s,new byte[0]);
             results.put(s,"");
             states.put(s,PlayerState.NOTIFIED);
             changed.put(s,false);
@@ -460,17 +602,34 @@ public class GameState {
     }
 
     /**
-     * Method that initializes all transitions on first creation of a
-     * {@code GameState} instance.
+     * Method that initializes all transitions when the class is loaded.
+     * 
+     * @return All legal transitions.
      */
-    private static void initTransitions() {
-        transitions = new HashMap<>();
+    private static HashMap<State,State> initTransitions() {
+        HashMap<State,State> transitions = new HashMap<>();
         transitions.put(State.LOBBY,State.GM_CHOOSING);
         transitions.put(State.GM_CHOOSING, State.STARTING);
         transitions.put(State.STARTING, State.RUNNING);
         transitions.put(State.RUNNING, State.MINIGAME_END);
         transitions.put(State.MINIGAME_END, State.GM_CHOOSING);
         transitions.put(State.PARTY_END,State.LOBBY);
+
+        return transitions;
+    }
+
+    /**
+     * Method that reads the deadlines of all {@code State}s from the system properties {@code game.deadline.<STATE>}.
+     */
+    private static EnumMap<State,Long> initDeadlines() {
+        EnumMap<State,Long> map = new EnumMap<>(State.class);
+
+        for(State state : new State[] {State.GM_CHOOSING, State.STARTING, State.RUNNING, State.MINIGAME_END}) {
+            Long millis = Long.getLong("game.deadline."+state.name());
+            if(millis != null && millis > 0) map.put(state, millis);
+        }
+
+        return map;
     }
 
     /**
@@ -493,9 +652,129 @@ public class GameState {
      * This method is responsible for managing all {@code GameState} transitions.
      */
     private void transit() {
+        FlightEvents.GameStateOperation event = new FlightEvents.GameStateOperation();
+        event.begin();
+        State from = gameState;
+
         for(String s : players)
             changed.replace(s,true);
         gameState = transitions.get(gameState);
+        stateChanged();
+
+        event.roomID = roomID;
+        event.operation = "transit";
+        event.from = from.name();
+        event.to = gameState.name();
+        event.commit();
+    }
+
+    /**
+     * This method is called after every {@code State} change. It starts or stops the tick loop and replaces the deadline of the previous {@code State}.
+     */
+    private void stateChanged() {
+        events.append(EventType.TRANSIT, -1, gameState, "");
+        version++;
+
+        //the results are published all at once, like getResults does, as soon as they are visible
+        if(gameState == State.MINIGAME_END) {
+            List<String> visible = visibleResults();
+            if(!visible.isEmpty()) events.append(EventType.RESULTS, -1, gameState, JsonFactory.toJsonArray(visible));
+        }
+
+        if(gameState == State.RUNNING)
+            TickBroadcaster.start(roomID, this);
+        else
+            TickBroadcaster.stop(roomID);
+        //
+
+        armDeadline();
+    }
+
+    /**
+     * This method replaces the pending deadline with the deadline of the current {@code State}, if it has one.
+     */
+    private void armDeadline() {
+        if(deadline != null) deadline.cancel();
+        deadline = null;
+
+        Long millis;
+        synchronized(deadlines) {
+            millis = deadlines.get(gameState);
+        }
+
+        if(millis != null) {
+            State expected = gameState;
+            deadline = timers.schedule(() -> expire(expected), millis);
+        }
+    }
+
+    /**
+     * This method is called by the timer wheel when a deadline expires. Players that did not respond in time are marked as missing
+     * and the game is advanced as if they did. In GM_CHOOSING, the next player becomes Gamemaster instead.
+     * If the {@code State} changed in the meantime, nothing is done.
+     * 
+     * @param expected The {@code State} the deadline was set for.
+     */
+    private synchronized void expire(State expected) {
+        if(gameState != expected) return;
+
+        Logger.Logf(Tags.INF,"Deadline of state {} expired in room {}",gameState,roomID);
+        deadline = null;
+
+        switch(gameState) {
+            case GM_CHOOSING:
+                //the turn to choose passes on, and the next Gamemaster gets the full deadline again
+                events.append(EventType.TIMEOUT, GMindex, gameState, "");
+                if(!roomOwnerAlwaysGM)
+                    GMindex = (GMindex + 1) % players.size();
+                //
+                for(String s : players)
+                    changed.replace(s,true);
+                //
+                version++;
+                armDeadline();
+                break;
+            case STARTING:
+                for(String s : players)
+                    if(states.get(s) != PlayerState.PLAYING) {
+                        events.append(EventType.TIMEOUT, players.indexOf(s), gameState, "");
+                        states.replace(s, PlayerState.PLAYING);
+                    }
+                //
+                transit();
+                break;
+            case RUNNING:
+                //sync transits as soon as the last missing player is marked
+                for(String s : players)
+                    if(states.get(s) != PlayerState.WAITING) {
+                        events.append(EventType.TIMEOUT, players.indexOf(s), gameState, "");
+                        sync(s, missingResult);
+                    }
+                //
+                break;
+            case MINIGAME_END:
+                for(String s : players)
+                    if(states.get(s) != PlayerState.READY) {
+                        events.append(EventType.TIMEOUT, players.indexOf(s), gameState, "");
+                        postReady(s);
+                    }
+                //
+                resetMinigameValues();
+                transit();
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * This method cancels the pending deadline and stops the tick loop. Called by the {@code GameStateCache} when the room is unoccupied.
+     */
+    synchronized void release() {
+        TickBroadcaster.stop(roomID);
+
+        if(deadline != null) deadline.cancel();
+        deadline = null;
     }
 
     /**
@@ -513,13 +792,32 @@ public class GameState {
         //
         
         initResults = false;
+        version++;
+    }
+
+    /**
+     * This method returns the results like {@code getResults} does, without initializing them.
+     * 
+     * @return The results of all players once everyone posted their result, and an empty list otherwise.
+     */
+    private List<String> visibleResults() {
+        if(!initResults) return minigameResults;
+        if(!allInState(PlayerState.WAITING)) return Collections.emptyList();
+
+        List<String> visible = new ArrayList<>(players.size());
+        for(String s : players)
+            visible.add(results.get(s));
+        //
+
+        return visible;
     }
 
     /**This Constructor only intializes the hash maps and gamestate. */
-    private GameState() {
+    private GameState(int roomID) {
+        this.roomID = roomID;
         
         minigameResults = new ArrayList<>(4);
-        playerData = new HashMap<>();
+        playerData = new ConcurrentHashMap<>();
         results = new HashMap<>();
         states = new HashMap<>();
         changed = new HashMap<>();
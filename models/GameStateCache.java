@@ -2,6 +2,7 @@ package models;
 
 import models.GameState.State;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import models.Logger.Tags;
 
 import Exceptions.GameStateException;
@@ -9,6 +10,8 @@ import Exceptions.GameStateException;
 /**
  * This class stores all running games. This is a purely static class. 
  * This class also contains some methods to help instantiating, deconstructing a {@code GameState} and
+ * The games are kept in an {@code AtomicReferenceArray}, so a game that is created or released on one request thread is seen by all others,
+ * and two threads occupying the same room end up with the same {@code GameState}.
  */
 public class GameStateCache {
 
@@ -18,7 +21,11 @@ public class GameStateCache {
      * @param roomID The ID of the corresponding {@code GameRoom}.
      */
     public static void unoccupyRoom(int roomID) {
-        allGames[roomID] = null;
+        GameState state;
+
+        if((state = allGames.getAndSet(roomID, null)) != null)
+            state.release();
+        //
     }
 
     /**
@@ -28,15 +35,27 @@ public class GameStateCache {
      * @throws GameStateException This Exception class is thrown when: The room is tried to be occupied while its not unoccupied. 
      */
     public static void occupyRoom(int roomID) throws GameStateException {
-        Logger.Log(Tags.CLL,"occupying room "+roomID);
+        Logger.Logf(Tags.CLL,"occupying room {}",roomID);
+        FlightEvents.GameStateOperation event = new FlightEvents.GameStateOperation();
+        event.begin();
         GameState state;
 
-        if((state = allGames[roomID]) == null) {
-            state = GameState.CreateGame();
-            allGames[roomID] = state;  
+        if((state = allGames.get(roomID)) == null) {
+            GameState created = GameState.CreateGame(roomID);
+            //if another thread created a game first, that game is occupied instead
+            state = allGames.compareAndSet(roomID, null, created) ? created : allGames.get(roomID);
         }
         
-        state.occupy();
+        event.from = state.getState().name();
+
+        try {
+            state.occupy();
+        } finally {
+            event.roomID = roomID;
+            event.operation = "occupy";
+            event.to = state.getState().name();
+            event.commit();
+        }
     }
 
 
@@ -47,11 +66,11 @@ public class GameStateCache {
      * @throws GameStateException This Exception class is thrown when: Not enough players in the {@code GameRoom}, not the room owner, wrong {@code State}.
      */
     public static void startGame(String firebaseID, GameRoom room) throws GameStateException {
-        Logger.Log(Tags.CLL,"Start game called on room "+room.unique());
+        Logger.Logf(Tags.CLL,"Start game called on room {}",room.unique());
         
         GameState state;
 
-        if((state = allGames[Integer.parseInt(room.unique())]) == null) 
+        if((state = allGames.get(Integer.parseInt(room.unique()))) == null) 
             throw new GameStateException("There is no GameState instance at index "+room.unique()+".");
         //
 
@@ -70,15 +89,32 @@ public class GameStateCache {
     public static GameState getGameInstance(int roomID) throws GameStateException {
         GameState state;
 
-        if((state = allGames[roomID]) == null) 
+        if((state = allGames.get(roomID)) == null) 
             throw new GameStateException("There is no GameState instance at index "+roomID+".");
 
         return state;
     }
 
+    /**
+     * This method counts the running games that are in the specified {@code State}. Used for metrics; the count is not exact while games change.
+     * 
+     * @param state The {@code State} that is counted.
+     * @return The number of games in that {@code State}.
+     */
+    public static int countInState(State state) {
+        int count = 0;
+
+        for(int i = 0; i < allGames.length(); i++) {
+            GameState game = allGames.get(i);
+            if(game != null && game.getState() == state) count++;
+        }
+
+        return count;
+    }
+
     /* PRIVATE FUNCTIONS */
 
-    private static final GameState[] allGames = new GameState[99]; //storage for all gamestates
+    private static final AtomicReferenceArray<GameState> allGames = new AtomicReferenceArray<>(100); //storage for all gamestates, indexed by room ID; room IDs go up to 99
 
     /** Private Constructor */
     private GameStateCache() {}
@@ -1,22 +1,122 @@
 package models;
 
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import play.libs.Json;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
 import play.mvc.*;
 
 import models.*;
 import models.Logger.Tags;
 import Exceptions.*;
+import interfaces.ITryCatchExecution;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import org.bson.Document;
 
 /**
  * This purely static class converts relevant Objects into JSON-String objects that are sent back to the client as a response to an API-call.
  * The JsonFactory creates a JSON-String with a status message at the very beginning for communicating the result of an API-call.
+ * The JSON-Strings are written directly with a streaming {@code JsonGenerator} into a reusable buffer, without building a tree of nodes first.
+ * The buffers are kept in a shared pool instead of per thread, so they are also reused when every API-call runs on its own virtual thread.
+ * Bodies that never change are encoded only once.
+ * Clients that send {@code Accept: application/cbor} receive the same envelope encoded as CBOR instead, with native numbers and booleans.
+ * The encoding of the current API-call is set per thread with {@code setEncoding}.
  */
 public class JsonFactory {
 
+    /**
+     * This interface writes the fields that follow the status fields of a body.
+     */
+    private interface BodyWriter {
+        void write(JsonGenerator gen) throws IOException;
+    }
+
+    /**
+     * The encodings a response body can be sent in.
+     */
+    public enum Encoding {
+        JSON(Http.MimeTypes.JSON, new com.fasterxml.jackson.core.JsonFactory()),
+        CBOR("application/cbor", new CBORFactory());
+
+        private final String mimeType; //the content type of the response
+        private final com.fasterxml.jackson.core.JsonFactory generators; //creates the streaming generators for this encoding
+
+        private Encoding(String mimeType, com.fasterxml.jackson.core.JsonFactory generators) {
+            this.mimeType = mimeType;
+            this.generators = generators;
+        }
+
+        /**
+         * This method picks the encoding the client asked for in its Accept header, respecting the q-values of the media ranges.
+         * Only an explicit {@code application/cbor} selects CBOR, and only if the client prefers it over JSON;
+         * wildcards and ties keep JSON so existing clients are unaffected.
+         *
+         * @param request The request of the client.
+         * @return The negotiated encoding.
+         */
+        public static Encoding negotiate(Http.Request request) {
+            String accept = request.header(Http.HeaderNames.ACCEPT).orElse("");
+            if(!accept.contains(CBOR.mimeType)) return JSON;
+
+            return (quality(accept, CBOR.mimeType, true) > quality(accept, JSON.mimeType, false)) ? CBOR : JSON;
+        }
+
+        /**
+         * This method determines the q-value the client gave a media type in its Accept header. The most specific matching media range counts.
+         *
+         * @param accept The Accept header of the request.
+         * @param mimeType The media type.
+         * @param exact Whether only the media type itself matches, and no wildcards.
+         * @return The q-value between 0 and 1; 0 if no media range matches.
+         */
+        private static double quality(String accept, String mimeType, boolean exact) {
+            String wildcard = mimeType.substring(0, mimeType.indexOf('/')) + "/*";
+            double quality = 0;
+            int specificity = -1; //2 for the media type itself, 1 for its type with a wildcard subtype, 0 for */*
+
+            for(String range : accept.split(",")) {
+                String[] parts = range.split(";");
+                String type = parts[0].trim().toLowerCase();
+
+                int matched = type.equals(mimeType) ? 2 : exact ? -1 : type.equals(wildcard) ? 1 : type.equals("*/*") ? 0 : -1;
+                if(matched <= specificity) continue;
+
+                double q = 1;
+                for(int i = 1; i < parts.length; i++) {
+                    String param = parts[i].trim().toLowerCase();
+
+                    if(param.startsWith("q=")) {
+                        try {
+                            q = Math.max(0, Math.min(1, Double.parseDouble(param.substring(2))));
+                        } catch (NumberFormatException e) {
+                            q = 0;
+                        }
+                    }
+                }
+
+                specificity = matched;
+                quality = q;
+            }
+
+            return quality;
+        }
+    }
+
+    private static final ThreadLocal<Encoding> encoding = ThreadLocal.withInitial(() -> Encoding.JSON); //the encoding of the API-call running on this thread
+    private static final ArrayBlockingQueue<ByteArrayOutputStream> buffers = new ArrayBlockingQueue<>(64); //reusable buffers, shared by all threads
+    private static final int maxBufferSize = 64 * 1024; //buffers that grew larger are dropped instead of reused
+    private static final String bootPrefix = Long.toString(System.currentTimeMillis(), 36); //keeps ETags from before a restart from matching
+
+    private static final byte[][] operationOk = encodeAll(0, "OPERATION OK"); //the pre-encoded OK status message for every encoding
+
     /**
      * The Constructor for the {@code JsonFactory} is private because this class does not need an instance.
      */
@@ -41,7 +141,29 @@ public class JsonFactory {
      * @return A response-ready OK status message.
      */
     public static Result toJson() {
-        return Results.ok(statusBody(0,"OPERATION OK"));
+        return cachedJson(operationOk[encoding.get().ordinal()]);
+    }
+
+    /**
+     * Sets the encoding of all bodies created on the current thread until it is reset.
+     *
+     * @param enc The encoding; {@code null} resets it to JSON.
+     */
+    public static void setEncoding(Encoding enc) {
+        if(enc == null)
+            encoding.remove();
+        else
+            encoding.set(enc);
+        //
+    }
+
+    /**
+     * Returns the encoding of all bodies created on the current thread.
+     *
+     * @return The current encoding.
+     */
+    public static Encoding getEncoding() {
+        return encoding.get();
     }
 
     /**
@@ -53,25 +175,70 @@ public class JsonFactory {
      */ 
     public static Result toJson(UserProfile user) {
         //status field
-        Logger.Log(Tags.SCS, "User "+user.getUserName()+" found. Converting to JSON-String...");
+        Logger.Logf(Tags.SCS, "User {} found. Converting to JSON-String...", user.getUserName());
+
+        return respond(0, "USER OK", gen -> {
+            gen.writeFieldName("VALUE");
+            transformUserProfile(gen, user);
+        });
+    }
+
+    /**
+     * Creates the same JSON-String as {@code toJson(UserProfile)}, but directly from the stored {@code Document} of the user,
+     * without building a {@code UserProfile} first. The fields are read like {@code UserProfile.decode} reads them.
+     *
+     * @param user The stored {@code Document} of the user.
+     * @param names The usernames of the user's friends and rivals by Firebase ID. Missing users are shown as "##UNKNOWN".
+     * @return A response-ready JSON-String format.
+     */
+    public static Result toJson(Document user, Map<String,String> names) {
+        return cachedJson(userBody(user, names));
+    }
+
+    /**
+     * Creates the serialized JSON-String of {@code toJson(Document, Map)}, to be cached by the caller.
+     *
+     * @param user The stored {@code Document} of the user.
+     * @param names The usernames of the user's friends and rivals by Firebase ID.
+     * @return The serialized JSON-String.
+     */
+    public static byte[] userBody(Document user, Map<String,String> names) {
+        Logger.Logf(Tags.SCS, "User {} found. Converting to JSON-String...", user.get("username"));
+
+        return encode(0, "USER OK", gen -> {
+            gen.writeObjectFieldStart("VALUE");
 
-        ObjectNode result = statusBody(0, "USER OK");
-        result.set("VALUE", transformUserProfile(user));
+            gen.writeStringField("username", user.getString("username"));
+            gen.writeNumberField("tickets", Integer.parseInt(user.getString("tickets")));
 
-        return Results.ok(result);
+            writeNames(gen, "friends", user.<String>getList("friends",String.class), names);
+            writeNames(gen, "rivals", user.<String>getList("rivals",String.class), names);
+
+            gen.writeArrayFieldStart("streaks");
+            for(Integer streak : user.<Integer>getList("streaks",Integer.class)) {
+                if(streak == null)
+                    gen.writeNull();
+                else
+                    gen.writeNumber(streak);
+            }
+            gen.writeEndArray();
+
+            gen.writeEndObject();
+        });
     }    
 
     /**
      * Creates a JSON-String containing a single value.
+     * In JSON the value is always written as a String; in CBOR numbers and booleans keep their type.
      * 
      * @param obj The object that is the value.
      * @return A response-ready status message with a single value.
      */
     public static Result toJson(Object obj) {
-        ObjectNode result = statusBody(0, "VALUE OK");
-        result.put("VALUE",String.valueOf(obj));
-
-        return Results.ok(result);
+        return respond(0, "VALUE OK", gen -> {
+            gen.writeFieldName("VALUE");
+            writeValue(gen, obj);
+        });
     }    
 
     /**
@@ -81,22 +248,218 @@ public class JsonFactory {
      * @return A response-ready status message with an array of values.
      */
     public static Result toJson(List<? extends Object> vals) {
-        ObjectNode result = statusBody(0, "VALUES OK");
+        return respond(0, "VALUES OK", gen -> {
+            gen.writeArrayFieldStart("VALUES");
 
-        ArrayNode strings = result.arrayNode();
-        
-        for(Object s : vals) 
-            strings.add(String.valueOf(s));
-        
+            for(Object s : vals)
+                writeValue(gen, s);
+            //
         
-        result.set("VALUES",strings);    
-
-        return Results.ok(result);
+            gen.writeEndArray();
+        });
     }    
 
+    /**
+     * Creates a JSON-String containing an array of {@code GameEventLog} events and the offset to continue from (NEXT).
+     *
+     * @param events The events, oldest first.
+     * @param offset The cursor the client continues from. Returned as NEXT if there are no new events.
+     * @return A response-ready status message with an array of events.
+     *         Object Layout:
+     *         STATUS:
+     *         MESSAGE:
+     *         NEXT:
+     *         VALUES:
+     *           [{offset, type, player, state, value}, ..], where player is the index of the player or -1
+     */
+    public static Result toJson(GameEventLog.Event[] events, long offset) {
+        return respond(0, "EVENTS OK", gen -> {
+            gen.writeNumberField("NEXT", (events.length == 0) ? offset : events[events.length - 1].getOffset());
+            gen.writeArrayFieldStart("VALUES");
+
+            for(GameEventLog.Event e : events) {
+                gen.writeStartObject();
+                gen.writeNumberField("offset", e.getOffset());
+                gen.writeStringField("type", String.valueOf(e.getType()));
+                gen.writeNumberField("player", e.getPlayer());
+                gen.writeStringField("state", String.valueOf(e.getState()));
+                gen.writeStringField("value", e.getValue());
+                gen.writeEndObject();
+            }
+
+            gen.writeEndArray();
+        });
+    }
+
+    /**
+     * Creates the JSON text of an array of Strings, regardless of the negotiated encoding. Used for event values that hold several values.
+     *
+     * @param values The Strings of the array.
+     * @return The array as JSON text.
+     */
+    public static String toJsonArray(List<String> values) {
+        StringWriter out = new StringWriter(16 * values.size() + 2);
+
+        try (JsonGenerator gen = Encoding.JSON.generators.createGenerator(out)) {
+            gen.writeStartArray();
+            for(String s : values)
+                gen.writeString(s);
+            //
+            gen.writeEndArray();
+        } catch (IOException e) {
+            //cannot happen when writing to memory
+            throw new UncheckedIOException(e);
+        }
+
+        return out.toString();
+    }
+
+    /**
+     * Creates a response from an already serialized JSON-String.
+     *
+     * @param body The serialized JSON-String, for example created by {@code snapshotBody}. It must be in the current encoding.
+     * @return A response-ready JSON-String.
+     */
+    public static Result cachedJson(byte[] body) {
+        return Results.ok(body).as(encoding.get().mimeType);
+    }
+
+    /**
+     * Creates a response from an already serialized JSON-String that is identified by an ETag.
+     * If the client already has this exact body, as told by its If-None-Match header, the body is not sent again.
+     *
+     * @param body The serialized JSON-String.
+     * @param etag The ETag of the body, including the quotes.
+     * @param request The request of the client.
+     * @return A response-ready JSON-String, or an empty 304 response.
+     */
+    public static Result cachedJson(byte[] body, String etag, Http.Request request) {
+        if(notModified(etag, request)) return notModified(etag);
+
+        return cachedJson(body).withHeader(Http.HeaderNames.ETAG, etag);
+    }
+
+    /**
+     * Creates an ETag from the version of the data a body is created from. The ETag also depends on the current encoding
+     * and changes with every restart of the server, when all versions start over.
+     *
+     * @param version Identifies the version of the data.
+     * @return The ETag, including the quotes.
+     */
+    public static String etag(String version) {
+        return "\"" + bootPrefix + "-" + version + "-" + encoding.get().ordinal() + "\"";
+    }
+
+    /**
+     * Creates a response for a body identified by an ETag. If the client already has the body, it is not created at all.
+     *
+     * @param etag The ETag of the body, including the quotes. It has to be determined before the body.
+     * @param request The request of the client.
+     * @param body Creates the response with the body; only called if the client does not have it yet.
+     * @return The response with the ETag, or an empty 304 response.
+     * @throws Exception Throws any Exception of the body.
+     */
+    public static Result conditional(String etag, Http.Request request, ITryCatchExecution body) throws Exception {
+        if(notModified(etag, request)) return notModified(etag);
+
+        return body.Try().withHeader(Http.HeaderNames.ETAG, etag);
+    }
+
+    /**
+     * This method checks whether the client already has the body identified by the ETag.
+     *
+     * @param etag The ETag of the current body, including the quotes.
+     * @param request The request of the client.
+     * @return {@code true} if the If-None-Match header of the request contains the ETag.
+     */
+    public static boolean notModified(String etag, Http.Request request) {
+        String match = request.header(Http.HeaderNames.IF_NONE_MATCH).orElse(null);
+
+        return match != null && (match.equals("*") || match.contains(etag));
+    }
+
+    /**
+     * Creates an empty response telling the client that its copy of the body is still current.
+     *
+     * @param etag The ETag of the body, including the quotes.
+     * @return A response-ready 304 status.
+     */
+    public static Result notModified(String etag) {
+        return Results.status(Http.Status.NOT_MODIFIED).withHeader(Http.HeaderNames.ETAG, etag);
+    }
+
+    /**
+     * Creates the serialized JSON-String of a {@code GameState} snapshot in the current encoding. The result is meant to be cached by the {@code GameState}.
+     *
+     * @return The serialized snapshot.
+     *         Object Layout:
+     *         STATUS:
+     *         MESSAGE:
+     *         VALUE:
+     *           state:
+     *           gmIndex:
+     *           minigame:
+     *           sociality:
+     *           lastEvent:
+     *           playerStates:
+     *             [..]
+     *           results:
+     *             [..]
+     */
+    public static byte[] snapshotBody(GameState.State state, int gmIndex, int minigame, int sociality,
+                                      List<String> playerStates, List<String> results, long lastEvent) {
+        return encode(0, "SNAPSHOT OK", gen -> {
+            gen.writeObjectFieldStart("VALUE");
+
+            gen.writeStringField("state", String.valueOf(state));
+            gen.writeNumberField("gmIndex", gmIndex);
+            gen.writeNumberField("minigame", minigame);
+            gen.writeNumberField("sociality", sociality);
+            gen.writeNumberField("lastEvent", lastEvent);
+
+            writeStrings(gen, "playerStates", playerStates);
+            writeStrings(gen, "results", results);
+
+            gen.writeEndObject();
+        });
+    }
+
+    /**
+     * Creates a binary response for raw data. The data is sent as it is, without any JSON-envelope or escaping.
+     * Only used for successful API-calls, errors are still returned as JSON-Strings.
+     *
+     * @param data The raw bytes that are sent to the client.
+     * @return A response-ready {@code application/octet-stream} body.
+     */
+    public static Result toBinary(byte[] data) {
+        return Results.ok(data).as(Http.MimeTypes.BINARY);
+    }
+
+    /**
+     * Creates a binary response for a payload of the binary in-game API-calls. The payload is length-prefixed like in the request bodies:
+     * the length of the data (int, big-endian) followed by the data.
+     *
+     * @param data The raw bytes of the payload.
+     * @return A response-ready {@code application/octet-stream} body.
+     */
+    public static Result toPayload(byte[] data) {
+        return toBinary(ByteBuffer.allocate(Integer.BYTES + data.length).putInt(data.length).put(data).array());
+    }
+
+    /**
+     * Creates a plain text response. Used for bodies that are read by tools instead of clients, like the metrics.
+     *
+     * @param text The text that is sent to the client.
+     * @return A response-ready {@code text/plain} body.
+     */
+    public static Result toText(String text) {
+        return Results.ok(text).as(Http.MimeTypes.TEXT);
+    }
 
     /**
      * Creates a JSON-String for when an API-call throws an exception.
+     * If the Database rejected the API-call because it is busy, the response has the status 503 and a Retry-After header,
+     * so clients back off instead of retrying right away.
      * 
      * @param e The Exception that is caught by the API-call.
      * @return A response-ready status message.
@@ -104,61 +467,176 @@ public class JsonFactory {
     public static Result toJson(Exception e) {
         Logger.Log(Tags.FLR,"API-call failed. Returning error message.");
 
-        return Results.ok(statusBody(1, e.getMessage()));
+        if(e instanceof DatabaseBusyException)
+            return Results.status(Http.Status.SERVICE_UNAVAILABLE, encode(1, e.getMessage(), null)).as(encoding.get().mimeType)
+                .withHeader(Http.HeaderNames.RETRY_AFTER, String.valueOf(((DatabaseBusyException) e).getRetryAfter()));
+        //
+
+        return respond(1, e.getMessage(), null);
     }        
 
     /**
-     * This method handles the creation of the {@code UserProfile} JSON-Object Node.
+     * This method writes the JSON-Object of a {@code UserProfile}.
      *
+     * @param gen The generator the object is written to.
      * @param user The {@code UserProfile} that is to be transformed into a JSON-String.
-     * @return The JSON-Object of a {@code UserProfile}.
      */
-    private static ObjectNode transformUserProfile(UserProfile user) {
+    private static void transformUserProfile(JsonGenerator gen, UserProfile user) throws IOException {
+        gen.writeStartObject();
 
-        //user information field
-        ObjectNode userInfo = Json.newObject();
-        ArrayNode friends = userInfo.arrayNode();
-        ArrayNode rivals = userInfo.arrayNode();
-        ArrayNode streaks = userInfo.arrayNode();
-
-        //create user information object first before putting it into the status field
-        userInfo.put("username", user.getUserName());
-        userInfo.put("tickets",user.getTickets());
-
-        //create json array for all friends, rivals and streaks
-        List<String> friendsList = user.getFriends();
-
-        for(String s : friendsList)
-            friends.add(s);
+        gen.writeStringField("username", user.getUserName());
+        gen.writeNumberField("tickets", user.getTickets());
 
+        writeStrings(gen, "friends", user.getFriends());
 
+        //rivals and streaks share their indices
         List<String> rivalsList = user.getRivals();
         List<Integer> streaksList = user.getStreaks();
         
+        writeStrings(gen, "rivals", rivalsList);
+
+        gen.writeArrayFieldStart("streaks");
         for(int i = 0; i < rivalsList.size();i++) {
-            rivals.add(rivalsList.get(i));
-            streaks.add(streaksList.get(i));
+            Integer streak = streaksList.get(i);
+
+            if(streak == null)
+                gen.writeNull();
+            else
+                gen.writeNumber(streak);
         }
+        gen.writeEndArray();
 
-        userInfo.set("friends", friends);
-        userInfo.set("rivals",rivals);
-        userInfo.set("streaks",streaks);
+        gen.writeEndObject();
+    }
 
-        return userInfo;
+    /**
+     * This method writes a single value. JSON bodies keep writing every value as a String, as clients expect;
+     * CBOR bodies write numbers and booleans natively.
+     *
+     * @param gen The generator the value is written to.
+     * @param obj The value.
+     */
+    private static void writeValue(JsonGenerator gen, Object obj) throws IOException {
+        if(encoding.get() == Encoding.JSON)
+            gen.writeString(String.valueOf(obj));
+        else if(obj instanceof Integer)
+            gen.writeNumber((Integer) obj);
+        else if(obj instanceof Long)
+            gen.writeNumber((Long) obj);
+        else if(obj instanceof Boolean)
+            gen.writeBoolean((Boolean) obj);
+        else
+            gen.writeString(String.valueOf(obj));
+        //
     }
 
     /**
-     * This method creates a JSON-Object body for the status messages.
+     * This method writes a field with an array of Strings.
+     *
+     * @param gen The generator the field is written to.
+     * @param name The name of the field.
+     * @param values The Strings of the array.
+     */
+    private static void writeStrings(JsonGenerator gen, String name, List<String> values) throws IOException {
+        gen.writeArrayFieldStart(name);
+
+        for(String s : values)
+            gen.writeString(s);
+        //
+
+        gen.writeEndArray();
+    }
+
+    /**
+     * This method writes a field with an array of usernames resolved from Firebase IDs.
+     *
+     * @param gen The generator the field is written to.
+     * @param name The name of the field.
+     * @param ids The Firebase IDs.
+     * @param names The usernames by Firebase ID.
+     */
+    private static void writeNames(JsonGenerator gen, String name, List<String> ids, Map<String,String> names) throws IOException {
+        gen.writeArrayFieldStart(name);
+
+        for(String id : ids)
+            gen.writeString(names.getOrDefault(id, "##UNKNOWN"));
+        //
+
+        gen.writeEndArray();
+    }
+
+    /**
+     * This method creates a response with a JSON-Object body starting with the status fields.
      * 
      * @param status The status code for the body.
      * @param statusMessage The custom status message that is set in the field MESSAGE
+     * @param value Writes the fields after the status fields; can be {@code null}.
+     * @return A response-ready JSON-String.
+     */
+    private static Result respond(int status, String statusMessage, BodyWriter value) {
+        return cachedJson(encode(status, statusMessage, value));
+    }
+
+    /**
+     * This method encodes a body without further fields once for every encoding.
+     *
+     * @param status The status code for the body.
+     * @param statusMessage The custom status message that is set in the field MESSAGE
+     * @return The encoded bodies, indexed by the ordinal of the encoding.
      */
-    private static ObjectNode statusBody(int status,String statusMessage) {
-        ObjectNode result = Json.newObject();
+    private static byte[][] encodeAll(int status, String statusMessage) {
+        Encoding[] all = Encoding.values();
+        byte[][] bodies = new byte[all.length][];
+
+        for(Encoding enc : all)
+            bodies[enc.ordinal()] = encode(enc, status, statusMessage, null);
+        //
+
+        return bodies;
+    }
+
+    /**
+     * This method encodes a body starting with the status fields in the current encoding.
+     *
+     * @param status The status code for the body.
+     * @param statusMessage The custom status message that is set in the field MESSAGE
+     * @param value Writes the fields after the status fields; can be {@code null}.
+     * @return The encoded body.
+     */
+    private static byte[] encode(int status, String statusMessage, BodyWriter value) {
+        return encode(encoding.get(), status, statusMessage, value);
+    }
+
+    /**
+     * This method encodes a JSON-Object body starting with the status fields into a buffer from the pool.
+     *
+     * @param enc The encoding of the body.
+     * @param status The status code for the body.
+     * @param statusMessage The custom status message that is set in the field MESSAGE
+     * @param value Writes the fields after the status fields; can be {@code null}.
+     * @return The encoded body.
+     */
+    private static byte[] encode(Encoding enc, int status, String statusMessage, BodyWriter value) {
+        ByteArrayOutputStream buffer = buffers.poll();
+        if(buffer == null) buffer = new ByteArrayOutputStream(512);
+
+        try (Tracer.Span span = Tracer.span("JsonFactory.encode"); JsonGenerator gen = enc.generators.createGenerator(buffer, JsonEncoding.UTF8)) {
+            gen.writeStartObject();
+            gen.writeNumberField("STATUS", status);
+            gen.writeStringField("MESSAGE", statusMessage);
+
+            if(value != null) value.write(gen);
+
+            gen.writeEndObject();
+        } catch (IOException e) {
+            //cannot happen when writing to memory
+            throw new UncheckedIOException(e);
+        }
 
-        result.put("STATUS",status);
-        result.put("MESSAGE",statusMessage);
+        byte[] body = buffer.toByteArray();
+        buffer.reset();
+        if(body.length <= maxBufferSize) buffers.offer(buffer);
 
-        return result;
+        return body;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,123 @@
+package models;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class records latencies into a fixed set of buckets, like an HDR histogram.
+ * Latencies are recorded in microseconds. Small values get a bucket of their own; above that, every power of two is split into
+ * 32 buckets of equal width, so any recorded value is off by at most about 3%. Latencies above {@code maxMicros} are counted as {@code maxMicros}.
+ * Recording is lock-free and does not allocate, so it can be used on every call.
+ */
+public class LatencyHistogram {
+
+    private static final int subBits = 5; //every power of two is split into 2^subBits buckets
+    private static final int subCount = 1 << subBits;
+    private static final long maxMicros = TimeUnit.SECONDS.toMicros(60); //the largest latency that is told apart
+
+    private final AtomicLongArray counts = new AtomicLongArray(index(maxMicros) + 1); //the number of latencies per bucket
+    private final LongAdder total = new LongAdder(); //the number of recorded latencies
+    private final LongAdder sum = new LongAdder(); //the sum of all recorded latencies in microseconds
+
+    /**
+     * This method records a latency.
+     *
+     * @param nanos The latency in nanoseconds.
+     */
+    public void record(long nanos) {
+        long micros = Math.min(Math.max(nanos / 1000, 0), maxMicros);
+
+        counts.incrementAndGet(index(micros));
+        total.increment();
+        sum.add(micros);
+    }
+
+    /**
+     * This method records the time that passed since a point in time.
+     *
+     * @param startNanos The point in time as returned by {@code System.nanoTime()}.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * This method returns the number of recorded latencies.
+     *
+     * @return The number of latencies.
+     */
+    public long count() {
+        return total.sum();
+    }
+
+    /**
+     * This method returns the sum of all recorded latencies.
+     *
+     * @return The sum in microseconds.
+     */
+    public long sumMicros() {
+        return sum.sum();
+    }
+
+    /**
+     * This method returns the latency below which the specified share of all recorded latencies lies.
+     * Concurrent recordings may or may not be included.
+     *
+     * @param quantile The share, between 0 and 1. For example 0.99 for the 99th percentile.
+     * @return The latency in microseconds, or 0 if nothing was recorded.
+     */
+    public long percentile(double quantile) {
+        long[] snapshot = new long[counts.length()];
+        long recorded = 0;
+
+        for(int i = 0; i < snapshot.length; i++)
+            recorded += snapshot[i] = counts.get(i);
+        //
+
+        if(recorded == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * recorded));
+        long seen = 0;
+
+        for(int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if(seen >= rank) return highestValue(i);
+        }
+
+        return maxMicros;
+    }
+
+    /* PRIVATE FUNCTIONS */
+
+    /**
+     * This method returns the bucket of a value. Values below 2 * subCount map to themselves,
+     * larger values map to one of the subCount buckets of their power of two.
+     *
+     * @param micros The value.
+     * @return The index of the bucket.
+     */
+    private static int index(long micros) {
+        if(micros < 2 * subCount) return (int) micros;
+
+        int shift = (63 - Long.numberOfLeadingZeros(micros)) - subBits;
+
+        return shift * subCount + (int) (micros >>> shift);
+    }
+
+    /**
+     * This method returns the largest value that falls into a bucket.
+     *
+     * @param index The index of the bucket.
+     * @return The largest value of the bucket.
+     */
+    private static long highestValue(int index) {
+        if(index < 2 * subCount) return index;
+
+        int shift = index / subCount - 1;
+        long lowest = (long) (index - shift * subCount) << shift;
+
+        return Math.min(lowest + (1L << shift) - 1, maxMicros);
+    }
+
+}
@@ -1,7 +1,16 @@
 package models;
 
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
 /**
- * This class prints logging Information to stdout with additional tag information
+ * This class prints logging Information to stdout with additional tag information.
+ * Every tag can be enabled at runtime; a call with a disabled tag returns immediately without building its message.
+ * The tags that are enabled on startup are taken from the system property {@code logger.tags}, a comma-separated list like {@code ERR,FLR} or {@code ALL}.
+ * Messages are not printed by the calling thread. They are put into a fixed-size ring and printed by a single background thread;
+ * if the ring is full, the message is dropped instead of blocking the caller. Url-parameters and template arguments are only
+ * turned into a String by the background thread.
  */
 public class Logger {
     
@@ -12,7 +21,39 @@ public class Logger {
     public static final String FLR = "FAILURE"; //used for when a certain operation fails
     public static final String INF = "INFO"; //used for general information
 
-    public static final boolean debug = false; //if this flag is true, logging is active. Set to false to reduce CPU-load from logging.
+    private static volatile int enabled = parseTags(System.getProperty("logger.tags", "")); //one bit per enabled tag
+
+    //kinds of messages in the ring
+    private static final byte MESSAGE = 0; //a finished message
+    private static final byte URL = 1; //a base url with one to three url-parameters; the kind is URL plus the number of parameters minus one
+    private static final byte URL_ARRAY = 4; //a base url with an array of url-parameters
+    private static final byte TEMPLATE = 5; //a template with up to three arguments for its {} placeholders
+
+    private static final int capacity = 8192; //the number of slots in the ring, a power of two
+    private static final int mask = capacity - 1;
+
+    //the ring. a slot is free for the producer of position p if its sequence is p, and ready for the consumer if it is p+1
+    private static final AtomicLongArray sequences = new AtomicLongArray(capacity);
+    private static final byte[] kinds = new byte[capacity];
+    private static final Tags[] tags = new Tags[capacity];
+    private static final String[] texts = new String[capacity];
+    private static final Object[] args = new Object[capacity * 3];
+
+    private static final AtomicLong head = new AtomicLong(); //the next position a producer claims
+    private static long tail = 0; //the next position the consumer prints, only used by the consumer thread
+    private static final AtomicLong dropped = new AtomicLong(); //the number of messages dropped because the ring was full
+
+    private static final Thread consumer = new Thread(Logger::drain, "logger"); //the background thread that prints the ring
+    private static volatile boolean parked = false; //set by the consumer before it parks on an empty ring, so producers know to wake it
+
+    static {
+        for(int i = 0; i < capacity; i++)
+            sequences.set(i, i);
+        //
+
+        consumer.setDaemon(true);
+        consumer.start();
+    }
 
     /**
      * This enumerator is used to identify viable tags used for logging messages.
@@ -45,6 +86,39 @@ public class Logger {
      */
     private Logger() {}
 
+    /**
+     * This method enables or disables a tag at runtime.
+     *
+     * @param tag The tag
+     * @param on Whether messages with this tag are printed.
+     */
+    public static synchronized void setEnabled(Tags tag, boolean on) {
+        if(on)
+            enabled |= 1 << tag.ordinal();
+        else
+            enabled &= ~(1 << tag.ordinal());
+        //
+    }
+
+    /**
+     * This method checks if a tag is enabled. Callers that have to do work only to create a message should check this first.
+     *
+     * @param tag The tag
+     * @return {@code true} if messages with this tag are printed.
+     */
+    public static boolean isEnabled(Tags tag) {
+        return (enabled & (1 << tag.ordinal())) != 0;
+    }
+
+    /**
+     * This method returns the number of messages that were dropped because the background thread could not keep up.
+     *
+     * @return The number of dropped messages since startup.
+     */
+    public static long dropped() {
+        return dropped.get();
+    }
+
     /**
      * This method prints a message to std out
      * 
@@ -52,20 +126,212 @@ public class Logger {
      * @param info The message Info
      */
     public static void Log(Tags tag, String info) {
-        if(debug)
-            System.out.println(translateTag(tag)+": "+info);
+        if(isEnabled(tag))
+            publish(MESSAGE, tag, info, null, null, null);
+        //
     }
 
     /**
-     * This method is specifically used to log url-calls with parameters
+     * This method is specifically used to log url-calls with a parameter
+     *
+     * @param tag The tag
+     * @param url  The base url
+     * @param a1 The parameter of the url call
+     */
+    public static void Log(Tags tag, String url, Object a1) {
+        if(isEnabled(tag))
+            publish(URL, tag, url, a1, null, null);
+        //
+    }
+
+    /**
+     * This method is specifically used to log url-calls with two parameters
+     *
+     * @param tag The tag
+     * @param url  The base url
+     * @param a1 The first parameter of the url call
+     * @param a2 The second parameter of the url call
+     */
+    public static void Log(Tags tag, String url, Object a1, Object a2) {
+        if(isEnabled(tag))
+            publish((byte) (URL + 1), tag, url, a1, a2, null);
+        //
+    }
+
+    /**
+     * This method is specifically used to log url-calls with three parameters
+     *
+     * @param tag The tag
+     * @param url  The base url
+     * @param a1 The first parameter of the url call
+     * @param a2 The second parameter of the url call
+     * @param a3 The third parameter of the url call
+     */
+    public static void Log(Tags tag, String url, Object a1, Object a2, Object a3) {
+        if(isEnabled(tag))
+            publish((byte) (URL + 2), tag, url, a1, a2, a3);
+        //
+    }
+
+    /**
+     * This method is specifically used to log url-calls with any number of parameters
      * 
      * @param tag The tag
      * @param url  The base url
      * @param components The parameters of the url call
      */
-    public static void Log(Tags tag, String url, String... components) {
-        if(debug)
-            Log(tag,buildUrl(url, components));
+    public static void Log(Tags tag, String url, Object... components) {
+        if(isEnabled(tag))
+            publish(URL_ARRAY, tag, url, components, null, null);
+        //
+    }
+
+    /**
+     * This method prints a message that is created from a template. Every {@code {}} in the template is replaced by the next argument.
+     *
+     * @param tag The tag
+     * @param template The message Info with a placeholder
+     * @param a1 The argument for the placeholder
+     */
+    public static void Logf(Tags tag, String template, Object a1) {
+        if(isEnabled(tag))
+            publish(TEMPLATE, tag, template, a1, null, null);
+        //
+    }
+
+    /**
+     * This method prints a message that is created from a template with two placeholders.
+     *
+     * @param tag The tag
+     * @param template The message Info with placeholders
+     * @param a1 The argument for the first placeholder
+     * @param a2 The argument for the second placeholder
+     */
+    public static void Logf(Tags tag, String template, Object a1, Object a2) {
+        if(isEnabled(tag))
+            publish(TEMPLATE, tag, template, a1, a2, null);
+        //
+    }
+
+    /**
+     * This method prints a message that is created from a template with three placeholders.
+     *
+     * @param tag The tag
+     * @param template The message Info with placeholders
+     * @param a1 The argument for the first placeholder
+     * @param a2 The argument for the second placeholder
+     * @param a3 The argument for the third placeholder
+     */
+    public static void Logf(Tags tag, String template, Object a1, Object a2, Object a3) {
+        if(isEnabled(tag))
+            publish(TEMPLATE, tag, template, a1, a2, a3);
+        //
+    }
+
+    /* PRIVATE FUNCTIONS */
+
+    /**
+     * This method puts a message into the ring. If the ring is full, the message is dropped.
+     *
+     * @param kind The kind of the message.
+     * @param tag The tag
+     * @param text The message, base url or template.
+     * @param a1 The first argument, or the array of url-parameters.
+     * @param a2 The second argument.
+     * @param a3 The third argument.
+     */
+    private static void publish(byte kind, Tags tag, String text, Object a1, Object a2, Object a3) {
+        long pos;
+        int slot;
+
+        while(true) {
+            pos = head.get();
+            slot = (int) pos & mask;
+            long diff = sequences.get(slot) - pos;
+
+            if(diff < 0) {
+                //the consumer did not free the slot yet, so the ring is full
+                dropped.incrementAndGet();
+                return;
+            }
+
+            if(diff == 0 && head.compareAndSet(pos, pos + 1)) break;
+        }
+
+        kinds[slot] = kind;
+        tags[slot] = tag;
+        texts[slot] = text;
+        args[slot * 3] = a1;
+        args[slot * 3 + 1] = a2;
+        args[slot * 3 + 2] = a3;
+
+        //publishes the fields written above to the consumer
+        sequences.set(slot, pos + 1);
+
+        if(parked) LockSupport.unpark(consumer);
+    }
+
+    /**
+     * This method is run by the background thread. It prints all messages in the ring and parks whenever the ring is empty,
+     * until a producer wakes it. A message that cannot be formatted, for example because an argument throws in {@code toString},
+     * is printed as an error instead, and its slot is freed all the same, so the thread never dies.
+     */
+    private static void drain() {
+        StringBuilder line = new StringBuilder(256);
+        long reported = 0;
+
+        while(true) {
+            int slot = (int) tail & mask;
+
+            if(sequences.get(slot) != tail + 1) {
+                long lost = dropped.get();
+                if(lost != reported) {
+                    System.out.println(ERR + ": " + (lost - reported) + " log messages dropped.");
+                    reported = lost;
+                }
+
+                //the flag is set before the ring is checked again, and producers check it after publishing, so no wake-up is lost;
+                //the timeout only bounds how late dropped messages are reported
+                parked = true;
+                if(sequences.get(slot) != tail + 1) LockSupport.parkNanos(1_000_000_000L);
+                parked = false;
+                continue;
+            }
+
+            line.setLength(0);
+
+            try {
+                line.append(translateTag(tags[slot])).append(": ");
+
+                switch(kinds[slot]) {
+                    case URL:
+                    case URL + 1:
+                    case URL + 2:
+                        buildUrl(line, texts[slot], kinds[slot] - URL + 1, args[slot * 3], args[slot * 3 + 1], args[slot * 3 + 2]);
+                        break;
+                    case URL_ARRAY:
+                        buildUrl(line, texts[slot], (Object[]) args[slot * 3]);
+                        break;
+                    case TEMPLATE:
+                        format(line, texts[slot], args[slot * 3], args[slot * 3 + 1], args[slot * 3 + 2]);
+                        break;
+                    default:
+                        line.append(texts[slot]);
+                }
+            } catch (Throwable e) {
+                line.setLength(0);
+                line.append(ERR).append(": log message \"").append(texts[slot]).append("\" could not be formatted: ").append(e.getClass().getName());
+            } finally {
+                //frees the slot for the producers
+                tags[slot] = null;
+                texts[slot] = null;
+                args[slot * 3] = args[slot * 3 + 1] = args[slot * 3 + 2] = null;
+                sequences.set(slot, tail + capacity);
+                tail++;
+            }
+
+            System.out.println(line);
+        }
     }
 
     /**
@@ -86,18 +352,79 @@ public class Logger {
     }
 
     /**
-     * This method builds a URL from a base and from url-parameters.
+     * This method parses a comma-separated list of tags. {@code ALL} enables every tag, unknown names are ignored.
      * 
+     * @param list The list of tags.
+     * @return One bit per enabled tag.
+     */
+    private static int parseTags(String list) {
+        int bits = 0;
+
+        for(String name : list.split(",")) {
+            name = name.trim();
+
+            if(name.equalsIgnoreCase("ALL")) return (1 << Tags.values().length) - 1;
+
+            for(Tags tag : Tags.values())
+                if(tag.name().equalsIgnoreCase(name)) bits |= 1 << tag.ordinal();
+            //
+        }
+
+        return bits;
+    }
+
+    /**
+     * This method appends a URL from a base and from up to three url-parameters.
+     *
+     * @param url The line the url is appended to.
+     * @param baseURL The base url
+     * @param count The number of url-parameters.
+     * @param a1 The first url-parameter.
+     * @param a2 The second url-parameter.
+     * @param a3 The third url-parameter.
+     */
+    private static void buildUrl(StringBuilder url, String baseURL, int count, Object a1, Object a2, Object a3) {
+        url.append(baseURL).append('/').append(a1);
+
+        if(count > 1) url.append('/').append(a2);
+        if(count > 2) url.append('/').append(a3);
+    }
+
+    /**
+     * This method appends a URL from a base and from url-parameters.
+     *
+     * @param url The line the url is appended to.
      * @param baseURL The base url
      * @param components The url-parameters.
-     * @return A complete url-string
      */
-    private static String buildUrl(String baseURL, String... components) {
-        String url = baseURL;
-        for(String s : components) {
-            url += "/"+s;
+    private static void buildUrl(StringBuilder url, String baseURL, Object... components) {
+        url.append(baseURL);
+
+        for(Object s : components)
+            url.append('/').append(s);
+        //
+    }
+
+    /**
+     * This method appends a message created from a template. Placeholders after the third are left as they are.
+     *
+     * @param line The line the message is appended to.
+     * @param template The template with {@code {}} placeholders.
+     * @param a1 The argument for the first placeholder.
+     * @param a2 The argument for the second placeholder.
+     * @param a3 The argument for the third placeholder.
+     */
+    private static void format(StringBuilder line, String template, Object a1, Object a2, Object a3) {
+        int from = 0;
+        int index = 0;
+        int at;
+
+        while(index < 3 && (at = template.indexOf("{}", from)) >= 0) {
+            line.append(template, from, at).append(index == 0 ? a1 : (index == 1 ? a2 : a3));
+            from = at + 2;
+            index++;
         }
 
-        return url;
+        line.append(template, from, template.length());
     }   
-}
\ No newline at end of file
+}
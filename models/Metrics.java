@@ -0,0 +1,156 @@
+package models;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * This purely static class collects the metrics of the server and exports them in the Prometheus text format.
+ * A metric is identified by its name and its labels, for example {@code mongo_operation_seconds} with
+ * {@code collection="userCollection",operation="find"}. Metrics are created on first use and live as long as the server.
+ * Callers on hot paths should keep the returned {@code LatencyHistogram} or {@code LongAdder} instead of looking it up on every call.
+ */
+public class Metrics {
+
+    private static final double[] quantiles = { 0.5, 0.9, 0.99, 0.999 }; //the quantiles that are exported for every histogram
+
+    private static final ConcurrentHashMap<String,Map<String,LatencyHistogram>> histograms = new ConcurrentHashMap<>(); //histograms by name and labels
+    private static final ConcurrentHashMap<String,Map<String,LongAdder>> counters = new ConcurrentHashMap<>(); //counters by name and labels
+    private static final ConcurrentHashMap<String,Map<String,LongSupplier>> gauges = new ConcurrentHashMap<>(); //gauges by name and labels
+    private static final ConcurrentHashMap<String,String> help = new ConcurrentHashMap<>(); //the description of every metric by name
+
+    /**
+     * The Constructor is private because this class does not need an instance.
+     */
+    private Metrics() {};
+
+    /**
+     * This method returns the histogram with the specified name and labels and creates it on first use.
+     *
+     * @param name The name of the metric. It should end in {@code _seconds}.
+     * @param description What the metric measures.
+     * @param labels The labels as alternating names and values.
+     * @return The histogram.
+     */
+    public static LatencyHistogram histogram(String name, String description, String... labels) {
+        help.putIfAbsent(name, description);
+
+        return histograms.computeIfAbsent(name, n -> new ConcurrentHashMap<>())
+            .computeIfAbsent(labels(labels), l -> new LatencyHistogram());
+    }
+
+    /**
+     * This method returns the counter with the specified name and labels and creates it on first use.
+     *
+     * @param name The name of the metric. It should end in {@code _total}.
+     * @param description What the metric counts.
+     * @param labels The labels as alternating names and values.
+     * @return The counter.
+     */
+    public static LongAdder counter(String name, String description, String... labels) {
+        help.putIfAbsent(name, description);
+
+        return counters.computeIfAbsent(name, n -> new ConcurrentHashMap<>())
+            .computeIfAbsent(labels(labels), l -> new LongAdder());
+    }
+
+    /**
+     * This method registers a gauge. The value of a gauge is read from the supplier whenever the metrics are exported.
+     * Registering a gauge with the same name and labels again replaces the supplier.
+     *
+     * @param name The name of the metric.
+     * @param description What the metric shows.
+     * @param value Supplies the current value.
+     * @param labels The labels as alternating names and values.
+     */
+    public static void gauge(String name, String description, LongSupplier value, String... labels) {
+        help.putIfAbsent(name, description);
+
+        gauges.computeIfAbsent(name, n -> new ConcurrentHashMap<>()).put(labels(labels), value);
+    }
+
+    /**
+     * This method exports all metrics in the Prometheus text format. Histograms are exported as summaries with their quantiles in seconds.
+     *
+     * @return The metrics as text.
+     */
+    public static String export() {
+        StringBuilder out = new StringBuilder(4096);
+
+        for(Map.Entry<String,Map<String,LongAdder>> metric : new TreeMap<>(counters).entrySet()) {
+            header(out, metric.getKey(), "counter");
+
+            for(Map.Entry<String,LongAdder> series : new TreeMap<>(metric.getValue()).entrySet())
+                sample(out, metric.getKey(), series.getKey(), null, series.getValue().sum());
+            //
+        }
+
+        for(Map.Entry<String,Map<String,LongSupplier>> metric : new TreeMap<>(gauges).entrySet()) {
+            header(out, metric.getKey(), "gauge");
+
+            for(Map.Entry<String,LongSupplier> series : new TreeMap<>(metric.getValue()).entrySet())
+                sample(out, metric.getKey(), series.getKey(), null, series.getValue().getAsLong());
+            //
+        }
+
+        for(Map.Entry<String,Map<String,LatencyHistogram>> metric : new TreeMap<>(histograms).entrySet()) {
+            String name = metric.getKey();
+            header(out, name, "summary");
+
+            for(Map.Entry<String,LatencyHistogram> series : new TreeMap<>(metric.getValue()).entrySet()) {
+                LatencyHistogram h = series.getValue();
+
+                for(double q : quantiles)
+                    sample(out, name, series.getKey(), "quantile=\"" + q + "\"", h.percentile(q) / 1e6);
+                //
+
+                sample(out, name + "_sum", series.getKey(), null, h.sumMicros() / 1e6);
+                sample(out, name + "_count", series.getKey(), null, h.count());
+            }
+        }
+
+        return out.toString();
+    }
+
+    /* PRIVATE FUNCTIONS */
+
+    private static String labels(String... labels) {
+        StringBuilder s = new StringBuilder();
+
+        for(int i = 0; i + 1 < labels.length; i += 2) {
+            if(s.length() > 0) s.append(',');
+            s.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+        }
+
+        return s.toString();
+    }
+
+    private static String escape(String value) {
+        return String.valueOf(value).replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static void header(StringBuilder out, String name, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help.getOrDefault(name, name)).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, String extra, double value) {
+        out.append(name);
+
+        if(!labels.isEmpty() || extra != null) {
+            out.append('{').append(labels);
+            if(extra != null) out.append(labels.isEmpty() ? "" : ",").append(extra);
+            out.append('}');
+        }
+
+        //whole numbers, like counts, are written without a fraction
+        if(value == Math.rint(value) && Math.abs(value) < 1e15)
+            out.append(' ').append((long) value).append('\n');
+        else
+            out.append(' ').append(value).append('\n');
+        //
+    }
+
+}
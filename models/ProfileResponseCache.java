@@ -0,0 +1,131 @@
+package models;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class stores the serialized profile responses of users, so {@code GetUserInfo} does not look up and serialize a profile that did not change.
+ * This is a purely static class. An entry is removed whenever the profile is updated or inserted through the {@code UserProfileDatabase}.
+ * Every entry carries an ETag derived from the content of the body, so clients can ask whether their copy of the profile is still current.
+ * Invalidations are counted per stripe of users, so a change of one profile does not keep the profiles of unrelated users from being cached.
+ */
+public class ProfileResponseCache {
+
+    /**
+     * A serialized profile response and its ETag.
+     */
+    public static class Entry {
+        private final byte[] body; //the serialized JSON-String
+        private final String etag; //identifies this exact body
+
+        private Entry(byte[] body, String etag) {
+            this.body = body;
+            this.etag = etag;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        public String getETag() {
+            return etag;
+        }
+    }
+
+    private static final int maxEntries = 10_000; //once the cache is full it is cleared
+    private static final int stripes = 1024; //the number of invalidation counters, a power of two
+    private static final AtomicLongArray invalidations = new AtomicLongArray(stripes); //increased on every invalidation of a user of the stripe
+    private static final ConcurrentHashMap<String,Entry> entries = new ConcurrentHashMap<>(); //the cached responses by Firebase ID
+
+    /**
+     * The Constructor is private because this class does not need an instance.
+     */
+    private ProfileResponseCache() {};
+
+    /**
+     * This method looks up the cached response of a user.
+     *
+     * @param firebaseID The Firebase ID of the user.
+     * @return The cached response, or {@code null} if there is none.
+     */
+    public static Entry lookup(String firebaseID) {
+        return entries.get(firebaseID);
+    }
+
+    /**
+     * This method has to be called before a profile is looked up in the Database to be stored with {@code put}.
+     * The lookup must not join a lookup that was already running, as that one could have started before the stamp.
+     *
+     * @param firebaseID The Firebase ID of the user.
+     * @return A stamp that is passed to {@code put}.
+     */
+    public static long stamp(String firebaseID) {
+        return invalidations.get(stripe(firebaseID));
+    }
+
+    /**
+     * This method stores the serialized response of a user.
+     * The response is only stored if the profile was not invalidated since the stamp was taken, because it might have been looked up before that change.
+     *
+     * @param firebaseID The Firebase ID of the user.
+     * @param stamp The stamp taken with {@code stamp} before the profile was looked up.
+     * @param body The serialized response.
+     * @return The entry of the response, whether it was stored or not.
+     */
+    public static Entry put(String firebaseID, long stamp, byte[] body) {
+        Entry entry = new Entry(body, JsonFactory.etag("p" + Long.toHexString(hash(body))));
+        int stripe = stripe(firebaseID);
+
+        if(entries.size() >= maxEntries) entries.clear();
+
+        entries.put(firebaseID, entry);
+
+        //an invalidation that happened in between could already have missed the entry
+        if(invalidations.get(stripe) != stamp) entries.remove(firebaseID, entry);
+
+        return entry;
+    }
+
+    /**
+     * This method removes the cached response of a user. Called whenever the profile of the user changes.
+     *
+     * @param firebaseID The Firebase ID of the user.
+     */
+    public static void invalidate(String firebaseID) {
+        invalidations.incrementAndGet(stripe(firebaseID));
+        entries.remove(firebaseID);
+    }
+
+    /**
+     * This method returns the number of cached responses.
+     *
+     * @return The number of entries.
+     */
+    public static int size() {
+        return entries.size();
+    }
+
+    /* PRIVATE FUNCTIONS */
+
+    private static int stripe(String firebaseID) {
+        return firebaseID.hashCode() & (stripes - 1);
+    }
+
+    /**
+     * This method hashes a body with 64-bit FNV-1a, so equal bodies get the same ETag and different ones practically never do.
+     *
+     * @param body The serialized response.
+     * @return The hash.
+     */
+    private static long hash(byte[] body) {
+        long h = 0xcbf29ce484222325L;
+
+        for(byte b : body) {
+            h ^= (b & 0xff);
+            h *= 0x100000001b3L;
+        }
+
+        return h;
+    }
+
+}
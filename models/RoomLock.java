@@ -0,0 +1,90 @@
+package models;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * This purely static class serializes the read-modify-write operations on a {@code GameRoom}: a room is looked up, changed and written back,
+ * and two of these operations on the same room must not overlap, or one of the changes is lost.
+ * Every room maps to one of a fixed number of stripes; operations on rooms of different stripes never wait for each other.
+ * A stripe is a queue of tickets: an operation takes the next ticket and waits until the operation before it released its ticket.
+ * Unlike a {@code ReentrantLock}, a ticket can be released by another thread, so blocking and non-blocking operations share the same queue.
+ * The lock is not reentrant.
+ */
+public class RoomLock {
+
+    private static final int stripes = 128; //the number of stripes, a power of two larger than the number of rooms
+    private static final AtomicReferenceArray<CompletableFuture<Void>> tails = initTails(); //the ticket of the last operation that queued per stripe
+
+    /**
+     * The Constructor is private because this class does not need an instance.
+     */
+    private RoomLock() {};
+
+    /**
+     * This method waits until no other operation holds the lock of the room and takes it. Used like a {@code ReentrantLock}:
+     * <pre>
+     * CompletableFuture&lt;Void&gt; ticket = RoomLock.lock(roomID);
+     * try { ... } finally { RoomLock.unlock(ticket); }
+     * </pre>
+     *
+     * @param roomID The ID of the room.
+     * @return The ticket that releases the lock.
+     */
+    public static CompletableFuture<Void> lock(int roomID) {
+        CompletableFuture<Void> ticket = new CompletableFuture<>();
+
+        tails.getAndSet(stripe(roomID), ticket).join();
+
+        return ticket;
+    }
+
+    /**
+     * This method releases the lock of a room.
+     *
+     * @param ticket The ticket returned by {@code lock}.
+     */
+    public static void unlock(CompletableFuture<Void> ticket) {
+        ticket.complete(null);
+    }
+
+    /**
+     * This method runs a non-blocking operation while holding the lock of the room. No thread waits for the lock: if the lock is free,
+     * the operation is started right away, otherwise it is started on the common pool once the lock is released.
+     * Starting it on the pool keeps a long queue of operations from being started one inside the other on the releasing thread's stack.
+     * The lock is released once the returned stage completes, successfully or not.
+     *
+     * @param roomID The ID of the room.
+     * @param operation Starts the operation and returns the stage that completes with it.
+     * @return A stage that completes like the stage of the operation.
+     */
+    public static <T> CompletionStage<T> lockAsync(int roomID, Supplier<CompletionStage<T>> operation) {
+        CompletableFuture<Void> ticket = new CompletableFuture<>();
+        CompletableFuture<Void> previous = tails.getAndSet(stripe(roomID), ticket);
+
+        CompletableFuture<T> result = previous.isDone()
+            ? previous.thenCompose(released -> operation.get())
+            : previous.thenComposeAsync(released -> operation.get());
+
+        return result.whenComplete((value, e) -> ticket.complete(null));
+    }
+
+    /* PRIVATE FUNCTIONS */
+
+    private static int stripe(int roomID) {
+        return roomID & (stripes - 1);
+    }
+
+    private static AtomicReferenceArray<CompletableFuture<Void>> initTails() {
+        AtomicReferenceArray<CompletableFuture<Void>> released = new AtomicReferenceArray<>(stripes);
+
+        for(int i = 0; i < stripes; i++)
+            released.set(i, CompletableFuture.completedFuture(null));
+        //
+
+        return released;
+    }
+
+}
@@ -0,0 +1,88 @@
+package models;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class records the requests, errors and latencies of one API-call of the {@code HomeController}.
+ * The API-call is identified by the anonymous class that encapsulates it: its name is the name of the method the class is declared in.
+ * The metrics of every API-call are looked up only once per class, so recording a request does not allocate.
+ */
+public class RouteMetrics {
+
+    private static final ClassValue<RouteMetrics> routes = new ClassValue<RouteMetrics>() {
+        @Override
+        protected RouteMetrics computeValue(Class<?> type) {
+            Method enclosing = type.getEnclosingMethod();
+
+            return new RouteMetrics((enclosing != null) ? enclosing.getName() : type.getSimpleName());
+        }
+    };
+    private static final ConcurrentHashMap<String,RouteMetrics> named = new ConcurrentHashMap<>(); //the metrics looked up by the name of the API-call
+
+    private final String route; //the name of the API-call
+    private final LongAdder requests; //the number of requests
+    private final LatencyHistogram latency; //the latency of all requests, including failed ones
+
+    /**
+     * Creates the metrics of an API-call.
+     *
+     * @param route The name of the API-call.
+     */
+    private RouteMetrics(String route) {
+        this.route = route;
+        this.requests = Metrics.counter("http_requests_total", "Requests per API-call", "route", route);
+        this.latency = Metrics.histogram("http_request_seconds", "Latency per API-call", "route", route);
+    }
+
+    /**
+     * This method returns the metrics of the API-call that is encapsulated by an anonymous class.
+     *
+     * @param execution The instance of the anonymous class.
+     * @return The metrics of the API-call.
+     */
+    public static RouteMetrics of(Object execution) {
+        return routes.get(execution.getClass());
+    }
+
+    /**
+     * This method returns the metrics of an API-call by its name. Used for fast paths that answer before the API-call is encapsulated,
+     * like 304 responses and cached bodies. They share their counters with the encapsulated path of the same API-call.
+     *
+     * @param route The name of the API-call, which is the name of its method in the {@code HomeController}.
+     * @return The metrics of the API-call.
+     */
+    public static RouteMetrics named(String route) {
+        return named.computeIfAbsent(route, RouteMetrics::new);
+    }
+
+    /**
+     * This method returns the name of the API-call.
+     *
+     * @return The name of the API-call.
+     */
+    public String getRoute() {
+        return route;
+    }
+
+    /**
+     * This method records a finished request.
+     *
+     * @param startNanos When the request started, as returned by {@code System.nanoTime()}.
+     */
+    public void finished(long startNanos) {
+        requests.increment();
+        latency.recordSince(startNanos);
+    }
+
+    /**
+     * This method counts a failed request by the class of its Exception.
+     *
+     * @param e The Exception the request failed with.
+     */
+    public void failed(Throwable e) {
+        Metrics.counter("http_errors_total", "Failed requests per API-call and Exception", "route", route, "exception", e.getClass().getSimpleName()).increment();
+    }
+
+}
@@ -0,0 +1,180 @@
+package models;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import interfaces.ITickSubscriber;
+import models.Logger.Tags;
+
+/**
+ * This purely static class publishes the synchronization data of running games at a fixed rate.
+ * While a {@code GameState} is RUNNING, a tick snapshots the data of all players and publishes it as one aggregated frame
+ * to all subscribers of the room. The latest frame is also kept for clients that poll.
+ * All rooms share one scheduler that is sized to the number of available cores.
+ * The broadcaster is disabled unless the system property {@code game.tickRate} (ticks per second) is set to a positive value.
+ * A tick only publishes while its loop is still the current loop of the room, so a tick that is still running when the loop is stopped
+ * cannot bring back a frame of a game that left RUNNING.
+ */
+public class TickBroadcaster {
+
+    private static final int maxRooms = 99; //max number of concurrent rooms, same as in GameRoom; room IDs run up to it
+    private static volatile int tickRate = Integer.getInteger("game.tickRate", 0); //ticks per second; 0 disables the broadcaster
+
+    private static final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(
+            Runtime.getRuntime().availableProcessors(), new TickThreadFactory());
+    private static final AtomicReferenceArray<Tick> ticks = new AtomicReferenceArray<>(maxRooms + 1); //running tick loops per room
+    private static final AtomicReferenceArray<byte[]> frames = new AtomicReferenceArray<>(maxRooms + 1); //latest published frame per room
+    private static final AtomicReferenceArray<List<ITickSubscriber>> subscribers = new AtomicReferenceArray<>(maxRooms + 1); //subscribers per room
+
+    /**
+     * This method returns whether the broadcaster is enabled.
+     *
+     * @return {@code true} if a tick rate is configured, and {@code false} otherwise.
+     */
+    public static boolean isEnabled() {
+        return tickRate > 0;
+    }
+
+    /**
+     * This method sets the tick rate for all tick loops that are started afterwards. Running tick loops keep their rate.
+     *
+     * @param ticksPerSecond The number of ticks per second. A value of 0 or less disables the broadcaster.
+     */
+    public static void setTickRate(int ticksPerSecond) {
+        tickRate = ticksPerSecond;
+    }
+
+    /**
+     * This method starts the tick loop for a running game. If the broadcaster is disabled or the loop is already running, nothing is done.
+     *
+     * @param roomID The ID of the corresponding {@code GameRoom}.
+     * @param state The {@code GameState} whose player data is published.
+     */
+    public static void start(int roomID, GameState state) {
+        int rate = tickRate;
+        if(rate <= 0 || ticks.get(roomID) != null) return;
+
+        Tick tick = new Tick(roomID, state);
+        if(!ticks.compareAndSet(roomID, null, tick)) return;
+
+        Logger.Logf(Tags.INF,"Starting tick loop for room {}",roomID);
+
+        tick.loop = scheduler.scheduleAtFixedRate(tick, 0, 1_000_000_000L / rate, TimeUnit.NANOSECONDS);
+
+        //a stop that ran before the loop was scheduled could not cancel it
+        if(ticks.get(roomID) != tick) tick.loop.cancel(false);
+    }
+
+    /**
+     * This method stops the tick loop of a room and drops its latest frame. If no loop is running, nothing is done.
+     *
+     * @param roomID The ID of the corresponding {@code GameRoom}.
+     */
+    public static void stop(int roomID) {
+        Tick tick = ticks.getAndSet(roomID, null);
+        if(tick == null) return;
+
+        Logger.Logf(Tags.INF,"Stopping tick loop for room {}",roomID);
+
+        ScheduledFuture<?> loop = tick.loop;
+        if(loop != null) loop.cancel(false);
+
+        frames.set(roomID, null);
+    }
+
+    /**
+     * This method registers a subscriber that receives every frame published for the room.
+     *
+     * @param roomID The ID of the corresponding {@code GameRoom}.
+     * @param subscriber The subscriber.
+     */
+    public static void subscribe(int roomID, ITickSubscriber subscriber) {
+        subscribers.compareAndSet(roomID, null, new CopyOnWriteArrayList<>());
+        subscribers.get(roomID).add(subscriber);
+    }
+
+    /**
+     * This method removes a subscriber from the room.
+     *
+     * @param roomID The ID of the corresponding {@code GameRoom}.
+     * @param subscriber The subscriber.
+     */
+    public static void unsubscribe(int roomID, ITickSubscriber subscriber) {
+        List<ITickSubscriber> list = subscribers.get(roomID);
+        if(list != null) list.remove(subscriber);
+    }
+
+    /**
+     * This method returns the latest frame published for a room.
+     *
+     * @param roomID The ID of the corresponding {@code GameRoom}.
+     * @return The latest frame, or {@code null} if no tick loop is running for the room.
+     */
+    public static byte[] latestFrame(int roomID) {
+        return frames.get(roomID);
+    }
+
+    /* PRIVATE FUNCTIONS */
+
+    /**
+     * A single tick loop for one room.
+     */
+    private static class Tick implements Runnable {
+        private final int roomID;
+        private final GameState state;
+        private volatile ScheduledFuture<?> loop; //the scheduled loop; null until it is scheduled
+        private long tick = 0;
+
+        private Tick(int roomID, GameState state) {
+            this.roomID = roomID;
+            this.state = state;
+        }
+
+        @Override
+        public void run() {
+            try {
+                byte[] frame = state.playerDataFrame(tick);
+
+                if(ticks.get(roomID) != this) return;
+                frames.set(roomID, frame);
+
+                //a stop in between could already have dropped the frames, so this frame is taken back
+                if(ticks.get(roomID) != this) {
+                    frames.compareAndSet(roomID, frame, null);
+                    return;
+                }
+
+                List<ITickSubscriber> list = subscribers.get(roomID);
+                if(list != null)
+                    for(ITickSubscriber s : list)
+                        s.publish(roomID, tick, frame);
+                //
+
+                tick++;
+            } catch (RuntimeException e) {
+                //an exception would silently cancel the loop, so it is only logged
+                Logger.Log(Tags.ERR,e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Creates the daemon threads of the shared scheduler.
+     */
+    private static class TickThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "tick-broadcaster-"+count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+
+    /** Private Constructor */
+    private TickBroadcaster() {}
+
+}
@@ -0,0 +1,251 @@
+package models;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import models.Logger.Tags;
+
+/**
+ * This class is a hierarchical timer wheel for a large number of cheap timeouts.
+ * Each level has 64 slots; a slot on level 0 covers one tick, a slot on level n covers 64^n ticks.
+ * Timeouts are kept in linked lists, so scheduling and cancelling are constant time no matter how many timeouts are pending.
+ * When the lower level wraps around, the next slot of the higher level is cascaded down.
+ * The wheel is driven by its own daemon thread; expired tasks run on that thread and should return quickly.
+ */
+public class TimerWheel {
+
+    private static final int slotBits = 6; //64 slots per level
+    private static final int slots = 1 << slotBits;
+    private static final int slotMask = slots - 1;
+    private static final int levels = 4; //64^4 ticks are covered before timeouts are clamped to the last level
+
+    private final long tickNanos; //duration of a single tick
+    private final long startNanos; //time the wheel started at
+    private final Timeout[][] wheel; //heads of the timeout lists, per level and slot
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ScheduledExecutorService driver;
+
+    private long currentTick = 0; //number of ticks that have been processed
+    private int pending = 0; //number of pending timeouts
+
+    /**
+     * This class represents a single scheduled task. It can be cancelled as long as it did not expire yet.
+     */
+    public static class Timeout {
+        private final TimerWheel owner;
+        private final Runnable task;
+        private final long deadline; //the tick the timeout expires at
+
+        private Timeout prev, next; //the neighbours in the slot list
+        private int level = -1, slot = -1; //the slot the timeout is in; -1 if not in the wheel
+
+        private Timeout(TimerWheel owner, Runnable task, long deadline) {
+            this.owner = owner;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * This method cancels the timeout.
+         *
+         * @return Returns {@code true} if the timeout was pending and is now cancelled, and {@code false} if it already expired or was cancelled.
+         */
+        public boolean cancel() {
+            return owner.cancel(this);
+        }
+    }
+
+    /**
+     * Creates a new {@code TimerWheel} and starts its driver thread.
+     *
+     * @param tickMillis The duration of a single tick in milliseconds. Timeouts fire with this granularity.
+     */
+    public TimerWheel(long tickMillis) {
+        tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        startNanos = System.nanoTime();
+        wheel = new Timeout[levels][slots];
+
+        driver = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "timer-wheel");
+            t.setDaemon(true);
+            return t;
+        });
+        driver.scheduleAtFixedRate(this::advance, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * This method schedules a task to run once the delay has passed.
+     *
+     * @param task The task that is run on expiry.
+     * @param delayMillis The delay in milliseconds.
+     * @return The {@code Timeout} that can be used to cancel the task.
+     */
+    public Timeout schedule(Runnable task, long delayMillis) {
+        //the deadline is based on the elapsed time, as the driver can lag behind by a few ticks
+        long deadline = (System.nanoTime() - startNanos + TimeUnit.MILLISECONDS.toNanos(delayMillis) + tickNanos - 1) / tickNanos;
+
+        lock.lock();
+        try {
+            Timeout timeout = new Timeout(this, task, Math.max(deadline, currentTick + 1));
+            place(timeout);
+            pending++;
+
+            return timeout;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * This method returns the number of pending timeouts.
+     *
+     * @return The number of timeouts that neither expired nor were cancelled.
+     */
+    public int pending() {
+        lock.lock();
+        try {
+            return pending;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /* PRIVATE FUNCTIONS */
+
+    /**
+     * This method removes a timeout from the wheel.
+     *
+     * @param timeout The timeout that is cancelled.
+     * @return Whether the timeout was still pending.
+     */
+    private boolean cancel(Timeout timeout) {
+        lock.lock();
+        try {
+            if(timeout.level < 0) return false;
+
+            unlink(timeout);
+            pending--;
+
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * This method processes all ticks that passed since the last call. Expired tasks are run after the lock is released.
+     */
+    private void advance() {
+        long target = (System.nanoTime() - startNanos) / tickNanos;
+        Timeout expired = null;
+
+        lock.lock();
+        try {
+            while(currentTick < target) {
+                currentTick++;
+
+                //cascade from the highest level that wrapped around, so timeouts can fall through several levels at once
+                for(int level = levels - 1; level > 0; level--)
+                    if((currentTick & ((1L << (slotBits * level)) - 1)) == 0)
+                        cascade(level, (int) (currentTick >>> (slotBits * level)) & slotMask);
+                //
+
+                Timeout t = wheel[0][(int) currentTick & slotMask];
+                while(t != null) {
+                    Timeout next = t.next;
+                    unlink(t);
+
+                    if(t.deadline <= currentTick) {
+                        pending--;
+                        t.next = expired;
+                        expired = t;
+                    } else {
+                        //clamped timeout that is not due yet
+                        place(t);
+                    }
+
+                    t = next;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        for(Timeout t = expired; t != null; t = t.next) {
+            try {
+                t.task.run();
+            } catch (RuntimeException e) {
+                Logger.Log(Tags.ERR,e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * This method moves all timeouts of a slot down to the level that matches their remaining delay.
+     *
+     * @param level The level of the slot.
+     * @param slot The index of the slot.
+     */
+    private void cascade(int level, int slot) {
+        Timeout t = wheel[level][slot];
+
+        while(t != null) {
+            Timeout next = t.next;
+            unlink(t);
+            place(t);
+            t = next;
+        }
+    }
+
+    /**
+     * This method puts a timeout into the slot that matches its remaining delay.
+     *
+     * @param timeout The timeout that is placed.
+     */
+    private void place(Timeout timeout) {
+        long delta = timeout.deadline - currentTick;
+        long deadline = timeout.deadline;
+        int level = 0;
+
+        while(level < levels - 1 && delta >= (1L << (slotBits * (level + 1))))
+            level++;
+        //
+
+        if(delta >= (1L << (slotBits * levels))) //too far away; clamp to the farthest slot and re-place it once it got there
+            deadline = currentTick + (1L << (slotBits * levels)) - 1;
+        //
+
+        int slot = (int) (deadline >>> (slotBits * level)) & slotMask;
+
+        timeout.level = level;
+        timeout.slot = slot;
+        timeout.prev = null;
+        timeout.next = wheel[level][slot];
+
+        if(timeout.next != null) timeout.next.prev = timeout;
+        wheel[level][slot] = timeout;
+    }
+
+    /**
+     * This method removes a timeout from its slot list.
+     *
+     * @param timeout The timeout that is removed.
+     */
+    private void unlink(Timeout timeout) {
+        if(timeout.prev != null)
+            timeout.prev.next = timeout.next;
+        else
+            wheel[timeout.level][timeout.slot] = timeout.next;
+        //
+
+        if(timeout.next != null) timeout.next.prev = timeout.prev;
+
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.level = -1;
+        timeout.slot = -1;
+    }
+
+}
@@ -0,0 +1,211 @@
+package models;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This purely static class traces API-calls. A trace is a tree of spans: the root span covers the whole API-call and its child spans
+ * cover the steps in between, like the user verification, the room lookup, every Database transaction and the JSON build.
+ * Only a share of all API-calls is traced, set with {@code setSampleRate} or the system property {@code trace.sampleRate} (0 to 1, default 0).
+ * For API-calls that are not traced, opening a span returns a shared no-op span and costs nothing but a thread-local lookup.
+ * The last finished traces are kept in memory and can be printed with {@code dump}.
+ * Spans are kept per thread. Steps that complete on another thread, like the stages of a non-blocking API-call, are recorded
+ * with {@code span(Span, String)} as explicit children of a span that was handed over with {@code detach}.
+ */
+public class Tracer {
+
+    /**
+     * A timed step of a trace. Spans are closed in the reverse order they were opened, best with try-with-resources.
+     */
+    public static class Span implements AutoCloseable {
+        private final String name; //what the span covers
+        private final Span parent; //the enclosing span, null for the root span
+        private boolean bound; //whether the span is the current span of the thread that opened it
+        private final long start; //when the span was opened, as returned by System.nanoTime()
+        private long duration = -1; //the duration in nanoseconds, -1 while the span is open
+        private List<Span> children; //the spans opened while this span was the current span, created on demand
+
+        private Span(String name, Span parent, boolean bound) {
+            this.name = name;
+            this.parent = parent;
+            this.bound = bound;
+            this.start = System.nanoTime();
+        }
+
+        /**
+         * This method closes the span and makes its parent the current span again. Closing the root span finishes the trace.
+         * A detached span or an explicit child span can be closed on any thread and leaves the current span of that thread alone.
+         */
+        @Override
+        public void close() {
+            if(this == NOOP || duration >= 0) return;
+
+            duration = System.nanoTime() - start;
+
+            if(parent == null) {
+                if(bound) current.remove();
+                export(this);
+            } else {
+                synchronized(parent) {
+                    if(parent.children == null) parent.children = new ArrayList<>(4);
+                    parent.children.add(this);
+                }
+                if(bound) current.set(parent);
+            }
+        }
+
+        /**
+         * This method hands the span over to the steps of a non-blocking API-call: it stays open, but is no longer the current span of this thread.
+         * Its parent becomes the current span again. The span is closed later, on whichever thread the API-call completes.
+         */
+        public void detach() {
+            if(this == NOOP || !bound) return;
+
+            bound = false;
+
+            if(parent == null) current.remove();
+            else current.set(parent);
+        }
+    }
+
+    private static final Span NOOP = new Span("noop", null, false); //returned whenever the current API-call is not traced
+    private static final ThreadLocal<Span> current = new ThreadLocal<>(); //the innermost open span of the current thread
+    private static volatile double sampleRate = parseRate(System.getProperty("trace.sampleRate", "0")); //the share of API-calls that are traced
+
+    private static final int kept = 64; //the number of finished traces that are kept
+    private static final AtomicReferenceArray<Span> traces = new AtomicReferenceArray<>(kept); //the last finished traces
+    private static final AtomicLong finished = new AtomicLong(); //the number of finished traces
+
+    /**
+     * The Constructor is private because this class does not need an instance.
+     */
+    private Tracer() {};
+
+    /**
+     * This method sets the share of API-calls that are traced.
+     *
+     * @param rate The share, between 0 (nothing is traced) and 1 (everything is traced). NaN turns tracing off.
+     */
+    public static void setSampleRate(double rate) {
+        sampleRate = Double.isNaN(rate) ? 0 : Math.min(Math.max(rate, 0), 1);
+    }
+
+    /**
+     * This method starts the trace of an API-call, if the API-call is sampled. Nested calls open a child span instead.
+     *
+     * @param name The name of the API-call.
+     * @return The root span, or the no-op span if the API-call is not traced.
+     */
+    public static Span startTrace(String name) {
+        Span parent = current.get();
+        if(parent != null) return open(name, parent);
+
+        double rate = sampleRate;
+        if(rate <= 0 || ThreadLocalRandom.current().nextDouble() >= rate) return NOOP;
+
+        return open(name, null);
+    }
+
+    /**
+     * This method opens a child span of the current span. If the current thread is not tracing, nothing is done.
+     *
+     * @param name The name of the step.
+     * @return The new span, or the no-op span.
+     */
+    public static Span span(String name) {
+        Span parent = current.get();
+
+        return (parent == null) ? NOOP : open(name, parent);
+    }
+
+    /**
+     * This method works like {@code span(String)}, but the name is put together from its pieces only if the current thread is tracing,
+     * so API-calls that are not traced build no Strings.
+     *
+     * @param component The component the step belongs to, like {@code Database}.
+     * @param operation The operation of the step, appended to the component with a dot.
+     * @param detail A detail that is appended to the name, like the collection of a Database transaction.
+     * @return The new span, or the no-op span.
+     */
+    public static Span span(String component, String operation, String detail) {
+        Span parent = current.get();
+
+        return (parent == null) ? NOOP : open(component + "." + operation + " " + detail, parent);
+    }
+
+    /**
+     * This method opens a child span of the specified span without making it the current span of this thread.
+     * Used for the steps of non-blocking API-calls, which start on one thread and complete on another; the span can be closed on any thread.
+     *
+     * @param parent The span the step belongs to, usually a detached root span. If it is {@code null} or not traced, nothing is done.
+     * @param name The name of the step.
+     * @return The new span, or the no-op span.
+     */
+    public static Span span(Span parent, String name) {
+        return (parent == null || parent == NOOP) ? NOOP : new Span(name, parent, false);
+    }
+
+    /**
+     * This method prints the last finished traces, newest first. Every span is printed with its duration in milliseconds,
+     * indented below the span it was opened in.
+     *
+     * @return The traces as text.
+     */
+    public static String dump() {
+        StringBuilder out = new StringBuilder(4096);
+        long last = finished.get();
+
+        out.append("sample rate ").append(sampleRate).append(", ").append(last).append(" traces finished\n");
+
+        for(long i = last - 1; i >= 0 && i >= last - kept; i--) {
+            Span root = traces.get((int) (i % kept));
+            if(root == null) continue;
+
+            out.append('\n');
+            print(out, root, 0);
+        }
+
+        return out.toString();
+    }
+
+    /* PRIVATE FUNCTIONS */
+
+    private static Span open(String name, Span parent) {
+        Span span = new Span(name, parent, true);
+        current.set(span);
+
+        return span;
+    }
+
+    private static void export(Span root) {
+        traces.set((int) (finished.getAndIncrement() % kept), root);
+    }
+
+    private static void print(StringBuilder out, Span span, int depth) {
+        for(int i = 0; i < depth; i++)
+            out.append("  ");
+        //
+
+        out.append(span.name).append(' ').append(String.format("%.3f", span.duration / 1e6)).append("ms\n");
+
+        synchronized(span) {
+            if(span.children != null)
+                for(Span child : span.children)
+                    print(out, child, depth + 1);
+                //
+            //
+        }
+    }
+
+    private static double parseRate(String rate) {
+        try {
+            return Math.min(Math.max(Double.parseDouble(rate), 0), 1);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+}
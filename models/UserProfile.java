@@ -1,6 +1,8 @@
 package models;
 
 import java.util.*;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 
 import Exceptions.*;
 import db.UserProfileDatabase;
@@ -50,8 +52,24 @@ public class UserProfile implements IDocumentCoder<UserProfile> {
      * @throws UnverifiedUserException Throws an Exception if the user could not be verified.
      */ 
     public static void verifiy(String firebaseID) throws UnverifiedUserException {
-        if(!UserProfileDatabase.getInstance().verifyUser(firebaseID))
-            throw new UnverifiedUserException("The user "+firebaseID+" does not exist!");
+        try (Tracer.Span span = Tracer.span("UserProfile.verify")) {
+            if(!UserProfileDatabase.getInstance().verifyUser(firebaseID))
+                throw new UnverifiedUserException("The user "+firebaseID+" does not exist!");
+        }
+    }        
+
+    /**
+     * This method is the non-blocking counterpart of {@code verifiy}.
+     * 
+     * @param firebaseID The user that is to be verified.
+     * @return A stage that completes once the user is verified. It completes exceptionally with an {@code UnverifiedUserException}
+     *         (wrapped in a {@code CompletionException}) if the user does not exist, and with a {@code DatabaseReadException} if the lookup failed.
+     */
+    public static CompletionStage<Void> verifyAsync(String firebaseID) {
+        return UserProfileDatabase.getInstance().verifyUserAsync(firebaseID).thenAccept(verified -> {
+            if(!verified)
+                throw new CompletionException(new UnverifiedUserException("The user "+firebaseID+" does not exist!"));
+        });
     }        
 
    /**
@@ -63,13 +81,92 @@ public class UserProfile implements IDocumentCoder<UserProfile> {
      *                               
      */ 
     public static UserProfile findUser(String firebaseID) throws UserNotFoundException {
+        try (Tracer.Span span = Tracer.span("UserProfile.findUser")) {
+            return (new UserProfile()).decode(findUserDocument(firebaseID));
+        }
+    }    
+
+    /**
+     * Creates a {@code UserProfile} from its stored {@code Document} without looking it up in the Database.
+     * Used where the {@code Document} is already at hand, like in the benchmarks.
+     *
+     * @param doc The stored {@code Document} of the user.
+     * @return The decoded {@code UserProfile}.
+     */
+    public static UserProfile construct(Document doc) {
+        return (new UserProfile()).decode(doc);
+    }
+
+    /**
+     * Looks up the stored {@code Document} of a user without decoding it into a {@code UserProfile}.
+     * Used for read-only API-calls that transform the {@code Document} directly.
+     *
+     * @param firebaseID The unique Firebase ID of a registered User.
+     * @return The stored {@code Document} of the user. It can be shared with concurrent lookups and must not be modified.
+     * @throws UserNotFoundException Throws an Exception if the user could not be found.
+     */
+    public static Document findUserDocument(String firebaseID) throws UserNotFoundException {
+        try (Tracer.Span span = Tracer.span("UserProfile.findUserDocument")) {
+            Document lookup;
+
+            if ((lookup = UserProfileDatabase.getInstance().findUser(firebaseID)) == null)
+                throw new UserNotFoundException("The User with the ID "+firebaseID+" could not be found in the Database!");
+            //
+
+            return lookup;
+        }
+    }
+
+    /**
+     * Looks up the stored {@code Document} of a user like {@code findUserDocument}, but never shares the lookup with concurrent callers.
+     * Used where the {@code Document} is cached, so the cached copy cannot stem from a lookup that started before a change.
+     *
+     * @param firebaseID The unique Firebase ID of a registered User.
+     * @return The stored {@code Document} of the user.
+     * @throws UserNotFoundException Throws an Exception if the user could not be found.
+     */
+    public static Document findOwnUserDocument(String firebaseID) throws UserNotFoundException {
+        try (Tracer.Span span = Tracer.span("UserProfile.findUserDocument")) {
+            Document lookup;
+
+            if ((lookup = UserProfileDatabase.getInstance().findUserUncoalesced(firebaseID)) == null)
+                throw new UserNotFoundException("The User with the ID "+firebaseID+" could not be found in the Database!");
+            //
+
+            return lookup;
+        }
+    }
+
+    /**
+     * Looks up the stored {@code Document} of a user by their username without decoding it into a {@code UserProfile}.
+     *
+     * @param username The name of the user.
+     * @return The stored {@code Document} of the user.
+     * @throws UserNotFoundException Throws an Exception if the user could not be found.
+     */
+    public static Document findUserDocumentByName(String username) throws UserNotFoundException {
         Document lookup;
 
-        if ((lookup = UserProfileDatabase.getInstance().findUser(firebaseID)) == null)
-            throw new UserNotFoundException("The User with the ID "+firebaseID+" could not be found in the Database!");
+        if ((lookup = UserProfileDatabase.getInstance().findUserByName(username)) == null)
+            throw new UserNotFoundException("The User with useername " + username + " could not be found in the Database!");
         //
 
-        return (new UserProfile()).decode(lookup);
+        return lookup;
+    }
+
+    /**
+     * Resolves the usernames of all friends and rivals of a stored user with a single Database lookup.
+     *
+     * @param user The stored {@code Document} of the user.
+     * @return A map from Firebase ID to username. Users that could not be resolved are missing from the map.
+     */
+    public static Map<String,String> findRelatedNames(Document user) {
+        try (Tracer.Span span = Tracer.span("UserProfile.findRelatedNames")) {
+            List<String> ids = new ArrayList<>(user.<String>getList("friends",String.class));
+            ids.addAll(user.<String>getList("rivals",String.class));
+
+            return UserProfileDatabase.getInstance().findUserNames(ids);
+        }
     }    
 
     /**
@@ -103,7 +200,7 @@ public class UserProfile implements IDocumentCoder<UserProfile> {
             throw new IdenticalUserException("The user "+firebaseID+" tried adding themself as a friend!");
         //
         
-        Logger.Log(Tags.INF,"Adding friend "+username);
+        Logger.Logf(Tags.INF,"Adding friend {}",username);
 
         if(friends.indexOf(lookup.firebaseID) != -1)
             throw new UserAlreadyExistingException("The user " + firebaseID + " already has " + username + " as their friend!");
@@ -126,7 +223,7 @@ public class UserProfile implements IDocumentCoder<UserProfile> {
      *                                      already exists.
      */
     public UserProfile(String firebaseID, String username) throws UserAlreadyExistingException, DatabaseInsertException {
-        Logger.Log(Tags.INF,"Attempting to register new user "+firebaseID+"...");
+        Logger.Logf(Tags.INF,"Attempting to register new user {}...",firebaseID);
 
         try {
             findUser(firebaseID);
@@ -274,8 +371,9 @@ public class UserProfile implements IDocumentCoder<UserProfile> {
         this.firebaseID = doc.getString("_id");
         this.username = doc.getString("username");
         this.tickets = Integer.parseInt(doc.getString("tickets"));
-        this.friends = doc.<String>getList("friends",String.class);
-        this.rivals = doc.<String>getList("rivals",String.class);
+        //lists are copied, as the Document can be shared between concurrent lookups
+        this.friends = new ArrayList<>(doc.<String>getList("friends",String.class));
+        this.rivals = new ArrayList<>(doc.<String>getList("rivals",String.class));
         List<Integer> streaksS = doc.<Integer>getList("streaks",Integer.class);
         
         for(int i = 0;i<rivals.size();i++) 